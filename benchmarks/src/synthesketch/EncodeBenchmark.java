@@ -0,0 +1,63 @@
+package synthesketch;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+
+	@Param({ "8", "16", "32" })
+	int sampleSizeInBits;
+
+	@Param({ "true", "false" })
+	boolean signed;
+
+	@Param({ "1", "2" })
+	int channels;
+
+	@Param({ "false", "true" })
+	boolean bigEndian;
+
+	PcmEncoder encoder;
+	float[] mix;
+	byte[] block;
+
+	@Setup
+	public void setup() {
+		AudioFormat format = new AudioFormat(44100, sampleSizeInBits,
+				channels, signed, bigEndian);
+		encoder = PcmEncoder.forFormat(format);
+		mix = new float[WaveformSynthesizer.BLOCK_IN_FRAMES];
+		Random random = new Random(0);
+		for (int i = 0; i < mix.length; ++i) {
+			mix[i] = random.nextFloat() * 2 - 1;
+		}
+		block = new byte[mix.length * format.getFrameSize()];
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		encoder.encode(mix, mix.length, block);
+		return block;
+	}
+
+}
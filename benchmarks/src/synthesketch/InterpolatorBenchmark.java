@@ -0,0 +1,74 @@
+package synthesketch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpolatorBenchmark {
+
+	@Param({ "NEAREST", "LINEAR", "CUBIC", "SINC" })
+	Interpolator interpolator;
+
+	@Param({ "200", "2048", "44100" })
+	int resampledLength;
+
+	double[] sketch;
+
+	@Setup
+	public void setup() {
+		sketch = testSignal(SKETCH_LENGTH);
+	}
+
+	@Benchmark
+	public double[] resample() {
+		return Waveforms.resample(sketch, resampledLength, interpolator);
+	}
+
+	static final int SKETCH_LENGTH = 200;
+	static final int[] HARMONICS = { 1, 5, 17, 40 };
+
+	static double[] testSignal(int length) {
+		double[] signal = new double[length];
+		for (int i = 0; i < length; ++i) {
+			for (int harmonic : HARMONICS) {
+				signal[i] += Math.sin(2 * Math.PI * harmonic * i / length)
+						/ HARMONICS.length;
+			}
+		}
+		return signal;
+	}
+
+	public static void main(String[] args) {
+		double[] sketch = testSignal(SKETCH_LENGTH);
+		double[] reference = testSignal(Wavetable.LENGTH);
+		for (Interpolator interpolator : Interpolator.values()) {
+			double[] resampled = Waveforms.resample(sketch, Wavetable.LENGTH,
+					interpolator);
+			double signal = 0, noise = 0;
+			for (int i = 0; i < reference.length; ++i) {
+				signal += reference[i] * reference[i];
+				noise += (resampled[i] - reference[i])
+						* (resampled[i] - reference[i]);
+			}
+			System.out.printf("%-8s %6.1f dB SNR%n", interpolator,
+					10 * Math.log10(signal / noise));
+		}
+	}
+
+}
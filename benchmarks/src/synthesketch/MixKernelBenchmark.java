@@ -0,0 +1,77 @@
+package synthesketch;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class MixKernelBenchmark {
+
+	@Param({ "scalar", "vector" })
+	String kernel;
+
+	@Param({ "8", "16", "32" })
+	int sampleSizeInBits;
+
+	MixKernel mixKernel;
+	PcmEncoder encoder;
+	float[] mix, voice;
+	byte[] block;
+
+	@Setup
+	public void setup() throws Exception {
+		if (kernel.equals("vector")) {
+			mixKernel = new VectorMixKernel();
+		} else {
+			mixKernel = MixKernel.SCALAR;
+		}
+		AudioFormat format = new AudioFormat(44100, sampleSizeInBits, 1,
+				true, false);
+		encoder = mixKernel.encoder(format);
+		Random random = new Random(0);
+		mix = new float[WaveformSynthesizer.BLOCK_IN_FRAMES];
+		voice = new float[WaveformSynthesizer.BLOCK_IN_FRAMES];
+		for (int i = 0; i < mix.length; ++i) {
+			mix[i] = random.nextFloat() * 8 - 4;
+			voice[i] = random.nextFloat() * 2 - 1;
+		}
+		block = new byte[mix.length * format.getFrameSize()];
+	}
+
+	@Benchmark
+	public float[] mixVoice() {
+		mixKernel.mixVoice(mix, voice, 0, mix.length, 0.5f, -1e-6f);
+		return mix;
+	}
+
+	@Benchmark
+	public float[] sum() {
+		mixKernel.sum(mix, voice, 0, mix.length);
+		return mix;
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		encoder.encode(mix, mix.length, block);
+		return block;
+	}
+
+}
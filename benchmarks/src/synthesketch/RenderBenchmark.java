@@ -0,0 +1,80 @@
+package synthesketch;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+	static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true,
+			false);
+
+	@Param({ "8", "32", "128", "512" })
+	int voices;
+
+	@Param({ "1", "4" })
+	int renderThreads;
+
+	WaveformSynthesizer synth;
+	WaveformSynthesizer.Renderer renderer;
+	float[] mix;
+	byte[] block;
+
+	@Setup
+	public void setup() {
+		synth = new WaveformSynthesizer();
+		synth.format = FORMAT;
+		synth.numberOfOscillators = voices;
+		synth.renderThreads = renderThreads;
+		synth.createVoices();
+		synth.wavetable = Waveforms.SAW.getWavetable();
+		renderer = synth.new Renderer(null, FORMAT);
+		synth.renderer = renderer;
+		for (int i = 0; i < voices; ++i) {
+			synth.startNote(0, 36 + i % 61, 64 + i % 64);
+		}
+		mix = new float[WaveformSynthesizer.BLOCK_IN_FRAMES];
+		block = new byte[mix.length * FORMAT.getFrameSize()];
+	}
+
+	@TearDown
+	public void tearDown() {
+		renderer.close();
+	}
+
+	@Benchmark
+	public float[] mix() {
+		Arrays.fill(mix, 0);
+		renderer.render(mix, 0, mix.length);
+		return mix;
+	}
+
+	@Benchmark
+	public byte[] mixAndEncode() {
+		Arrays.fill(mix, 0);
+		renderer.render(mix, 0, mix.length);
+		renderer.encoder.encode(mix, mix.length, block);
+		return block;
+	}
+
+}
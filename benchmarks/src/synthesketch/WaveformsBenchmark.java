@@ -0,0 +1,53 @@
+package synthesketch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveformsBenchmark {
+
+	@Param({ "200", "2048", "44100" })
+	int resampledLength;
+
+	double[] sine, saw;
+
+	@Setup
+	public void setup() {
+		sine = Waveforms.SINE.getSamples();
+		saw = Waveforms.SAW.getSamples();
+	}
+
+	@Benchmark
+	public double[] resample() {
+		return Waveforms.resample(sine, resampledLength);
+	}
+
+	@Benchmark
+	public Wavetable createWavetable() {
+		return Wavetable.create(saw);
+	}
+
+	@Benchmark
+	public float[] generateSine() {
+		float[] table = new float[Waveform.LENGTH];
+		Waveforms.SINE.generate(table);
+		return table;
+	}
+
+}
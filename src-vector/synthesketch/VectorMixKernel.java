@@ -0,0 +1,98 @@
+package synthesketch;
+
+import java.nio.ByteOrder;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+class VectorMixKernel extends MixKernel {
+
+	static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+	static final FloatVector RAMP = FloatVector.zero(FLOATS).addIndex(1);
+
+	@Override
+	void mixVoice(float[] mix, float[] voice, int offset, int frames,
+			float gain, float gainStep) {
+		int i = offset, bound = offset + FLOATS.loopBound(frames);
+		FloatVector gains = RAMP.mul(gainStep).add(gain);
+		float laneStep = gainStep * FLOATS.length();
+		for (; i < bound; i += FLOATS.length()) {
+			FloatVector.fromArray(FLOATS, voice, i).fma(gains,
+					FloatVector.fromArray(FLOATS, mix, i)).intoArray(mix, i);
+			gains = gains.add(laneStep);
+		}
+		gain += gainStep * (i - offset);
+		for (; i < offset + frames; ++i) {
+			mix[i] += gain * voice[i];
+			gain += gainStep;
+		}
+	}
+
+	@Override
+	void sum(float[] mix, float[] partial, int offset, int frames) {
+		int i = offset, bound = offset + FLOATS.loopBound(frames);
+		for (; i < bound; i += FLOATS.length()) {
+			FloatVector.fromArray(FLOATS, mix, i)
+					.add(FloatVector.fromArray(FLOATS, partial, i))
+					.intoArray(mix, i);
+		}
+		for (; i < offset + frames; ++i) {
+			mix[i] += partial[i];
+		}
+	}
+
+	@Override
+	PcmEncoder encoder(AudioFormat format) {
+		if (format.getChannels() != 1 || format.getSampleSizeInBits() != 32) {
+			return PcmEncoder.forFormat(format);
+		}
+		return new Vector32Encoder(
+				format.getEncoding() == Encoding.PCM_SIGNED,
+				format.isBigEndian() ? ByteOrder.BIG_ENDIAN
+						: ByteOrder.LITTLE_ENDIAN);
+	}
+
+	static IntVector quantize(float[] mix, int i, float scale, int offset) {
+		return (IntVector) FloatVector.fromArray(FLOATS, mix, i).mul(GAIN)
+				.max(-1f).min(1f).mul(scale)
+				.convert(VectorOperators.F2I, 0)
+				.lanewise(VectorOperators.XOR, offset);
+	}
+
+	static final float GAIN = 1f / WaveformSynthesizer.VOLUME_DIVISOR;
+
+	static class Vector32Encoder extends PcmEncoder.Pcm32Encoder {
+
+		Vector32Encoder(boolean signed, ByteOrder order) {
+			super(1, signed, order == ByteOrder.BIG_ENDIAN);
+			this.order = order;
+		}
+
+		final ByteOrder order;
+
+		@Override
+		void encode(float[] mix, int frames, byte[] block) {
+			int i = 0, bound = FLOATS.loopBound(frames);
+			for (; i < bound; i += FLOATS.length()) {
+				quantize(mix, i, Integer.MAX_VALUE, offset).intoByteArray(
+						block, 4 * i, order);
+			}
+			for (; i < frames; ++i) {
+				int sample = (int) (clip(mix[i]) * (double) Integer.MAX_VALUE)
+						^ offset;
+				block[4 * i] = (byte) (sample >> shift0);
+				block[4 * i + 1] = (byte) (sample >> shift1);
+				block[4 * i + 2] = (byte) (sample >> shift2);
+				block[4 * i + 3] = (byte) (sample >> shift3);
+			}
+		}
+
+	}
+
+}
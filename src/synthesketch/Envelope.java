@@ -0,0 +1,46 @@
+package synthesketch;
+
+public class Envelope {
+
+	public Envelope(double attack, double decay, double sustain,
+			double release) {
+		if (attack < 0 || decay < 0 || release < 0) {
+			throw new IllegalArgumentException(
+					"envelope times cannot be negative");
+		}
+		if (sustain < 0 || sustain > 1) {
+			throw new IllegalArgumentException(
+					"sustain level must be between 0 and 1");
+		}
+		this.attack = attack;
+		this.decay = decay;
+		this.sustain = sustain;
+		this.release = release;
+	}
+
+	final double attack, decay, sustain, release;
+
+	public double getAttack() {
+		return attack;
+	}
+
+	public double getDecay() {
+		return decay;
+	}
+
+	public double getSustain() {
+		return sustain;
+	}
+
+	public double getRelease() {
+		return release;
+	}
+
+	static float step(double seconds, double frameInSeconds) {
+		return seconds > frameInSeconds ? (float) (frameInSeconds / seconds)
+				: 1;
+	}
+
+	public static final Envelope DEFAULT = new Envelope(0.005, 0, 1, 0.02);
+
+}
@@ -0,0 +1,243 @@
+package synthesketch;
+
+public enum Interpolator {
+
+	NEAREST {
+		@Override
+		int taps(long step) {
+			return 2;
+		}
+
+		@Override
+		void resample(double[] padded, int pad, long phase, long step,
+				long limit, double[] resampled) {
+			for (int i = 0; i < resampled.length; ++i) {
+				resampled[i] = padded[pad + (int) ((phase + HALF) >>> 32)];
+				phase += step;
+				if (phase >= limit) {
+					phase -= limit;
+				}
+			}
+		}
+
+		@Override
+		double sample(double[] waveform, long phase) {
+			return at(waveform, (int) ((phase + HALF) >>> 32));
+		}
+	},
+
+	LINEAR {
+		@Override
+		int taps(long step) {
+			return 2;
+		}
+
+		@Override
+		void resample(double[] padded, int pad, long phase, long step,
+				long limit, double[] resampled) {
+			for (int i = 0; i < resampled.length; ++i) {
+				int index = pad + (int) (phase >>> 32);
+				double fraction = (phase & FRACTION) * SCALE;
+				double lower = padded[index];
+				resampled[i] = lower + fraction * (padded[index + 1] - lower);
+				phase += step;
+				if (phase >= limit) {
+					phase -= limit;
+				}
+			}
+		}
+
+		@Override
+		double sample(double[] waveform, long phase) {
+			int index = (int) (phase >>> 32);
+			double fraction = (phase & FRACTION) * SCALE;
+			double lower = at(waveform, index);
+			return lower + fraction * (at(waveform, index + 1) - lower);
+		}
+	},
+
+	CUBIC {
+		@Override
+		void resample(double[] padded, int pad, long phase, long step,
+				long limit, double[] resampled) {
+			double[] kernel = CUBIC_KERNEL;
+			for (int i = 0; i < resampled.length; ++i) {
+				int index = pad + (int) (phase >>> 32) - 1;
+				int k = ((int) (phase >>> (32 - PHASE_BITS)) & (PHASES - 1))
+						<< 2;
+				resampled[i] = kernel[k] * padded[index] + kernel[k + 1]
+						* padded[index + 1] + kernel[k + 2] * padded[index + 2]
+						+ kernel[k + 3] * padded[index + 3];
+				phase += step;
+				if (phase >= limit) {
+					phase -= limit;
+				}
+			}
+		}
+
+		@Override
+		double sample(double[] waveform, long phase) {
+			return convolve(CUBIC_KERNEL, 4, waveform, phase);
+		}
+	},
+
+	SINC {
+		@Override
+		int taps(long step) {
+			return sincTaps(step);
+		}
+
+		@Override
+		void resample(double[] padded, int pad, long phase, long step,
+				long limit, double[] resampled) {
+			int taps = sincTaps(step);
+			double[] kernel = taps == SINC_TAPS ? SINC_KERNEL : sincKernel(
+					taps, (double) ONE / step);
+			for (int i = 0; i < resampled.length; ++i) {
+				int index = pad + (int) (phase >>> 32) - (taps / 2 - 1);
+				int k = ((int) (phase >>> (32 - PHASE_BITS)) & (PHASES - 1))
+						* taps;
+				double sum = 0;
+				for (int t = 0; t < taps; ++t) {
+					sum += kernel[k + t] * padded[index + t];
+				}
+				resampled[i] = sum;
+				phase += step;
+				if (phase >= limit) {
+					phase -= limit;
+				}
+			}
+		}
+
+		@Override
+		double sample(double[] waveform, long phase) {
+			return convolve(SINC_KERNEL, SINC_TAPS, waveform, phase);
+		}
+	};
+
+	public static final Interpolator DEFAULT = load();
+
+	static Interpolator load() {
+		String name = System.getProperty("synthesketch.interpolator",
+				"LINEAR");
+		try {
+			return valueOf(name.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.err.println("warning: unknown interpolator " + name
+					+ ", using LINEAR");
+			return LINEAR;
+		}
+	}
+
+	static final long ONE = 1L << 32;
+	static final long HALF = 1L << 31;
+	static final long FRACTION = ONE - 1;
+	static final double SCALE = 1.0 / ONE;
+	static final int PHASE_BITS = 8;
+	static final int PHASES = 1 << PHASE_BITS;
+	static final int SINC_TAPS = 16;
+	static final int MAX_SINC_TAPS = 256;
+
+	static final double[] CUBIC_KERNEL = cubicKernel();
+	static final double[] SINC_KERNEL = sincKernel(SINC_TAPS, 1);
+
+	public double[] resample(double[] waveform, int resampledLength,
+			double resampledWaveformLength) {
+		double[] resampled = new double[resampledLength];
+		resample(waveform, step(waveform.length, resampledWaveformLength), 0,
+				resampled);
+		return resampled;
+	}
+
+	static long step(int length, double resampledWaveformLength) {
+		return Math.round(length / resampledWaveformLength * ONE);
+	}
+
+	void resample(double[] waveform, long step, int first,
+			double[] resampled) {
+		int length = waveform.length;
+		int pad = taps(step) + 1;
+		double[] padded = new double[length + 2 * pad];
+		for (int i = 0; i < padded.length; ++i) {
+			padded[i] = at(waveform, i - pad);
+		}
+		long limit = (long) length << 32;
+		resample(padded, pad, first * step % limit, step, limit, resampled);
+	}
+
+	public double sample(double[] waveform, double waveformPosition) {
+		double position = waveformPosition - Math.floor(waveformPosition);
+		return sample(waveform, (long) (position * waveform.length * ONE));
+	}
+
+	int taps(long step) {
+		return 4;
+	}
+
+	abstract void resample(double[] padded, int pad, long phase, long step,
+			long limit, double[] resampled);
+
+	abstract double sample(double[] waveform, long phase);
+
+	static double at(double[] waveform, int index) {
+		int length = waveform.length;
+		return waveform[(index % length + length) % length];
+	}
+
+	static double convolve(double[] kernel, int taps, double[] waveform,
+			long phase) {
+		int index = (int) (phase >>> 32) - (taps / 2 - 1);
+		int k = ((int) (phase >>> (32 - PHASE_BITS)) & (PHASES - 1)) * taps;
+		double sum = 0;
+		for (int t = 0; t < taps; ++t) {
+			sum += kernel[k + t] * at(waveform, index + t);
+		}
+		return sum;
+	}
+
+	static double[] cubicKernel() {
+		double[] kernel = new double[PHASES * 4];
+		for (int p = 0; p < PHASES; ++p) {
+			double x = (double) p / PHASES;
+			double x2 = x * x, x3 = x2 * x;
+			kernel[4 * p] = -0.5 * x3 + x2 - 0.5 * x;
+			kernel[4 * p + 1] = 1.5 * x3 - 2.5 * x2 + 1;
+			kernel[4 * p + 2] = -1.5 * x3 + 2 * x2 + 0.5 * x;
+			kernel[4 * p + 3] = 0.5 * x3 - 0.5 * x2;
+		}
+		return kernel;
+	}
+
+	static int sincTaps(long step) {
+		if (step <= ONE) {
+			return SINC_TAPS;
+		}
+		int taps = (int) Math.ceil(SINC_TAPS * ((double) step / ONE));
+		return Math.min(MAX_SINC_TAPS, (taps + 1) & ~1);
+	}
+
+	static double[] sincKernel(int taps, double cutoff) {
+		double[] kernel = new double[PHASES * taps];
+		double halfWidth = taps / 2;
+		for (int p = 0; p < PHASES; ++p) {
+			double fraction = (double) p / PHASES;
+			double sum = 0;
+			for (int t = 0; t < taps; ++t) {
+				double distance = t - (taps / 2 - 1) - fraction;
+				double x = Math.PI * cutoff * distance;
+				double sinc = x == 0 ? 1 : Math.sin(x) / x;
+				double w = distance / halfWidth;
+				double window = Math.abs(w) >= 1 ? 0 : 0.42 + 0.5
+						* Math.cos(Math.PI * w) + 0.08
+						* Math.cos(2 * Math.PI * w);
+				kernel[p * taps + t] = sinc * window;
+				sum += sinc * window;
+			}
+			for (int t = 0; t < taps; ++t) {
+				kernel[p * taps + t] /= sum;
+			}
+		}
+		return kernel;
+	}
+
+}
@@ -31,6 +31,7 @@ public class KeyboardPanel extends JPanel implements KeyListener,
 	}
 
 	static final int MIN_MIDI = 45, MAX_MIDI = 72;
+	static final int VELOCITY = 75;
 
 	static final Dimension SIZE = new Dimension(600, 200);
 
@@ -112,10 +113,12 @@ public class KeyboardPanel extends JPanel implements KeyListener,
 		public void noteOn() {
 			if (!playing) {
 				playing = true;
-				if (receiver != null) {
+				if (noteReceiver != null) {
+					noteReceiver.noteOn(midiCode, VELOCITY, System.nanoTime());
+				} else if (receiver != null) {
 					try {
 						receiver.send(new ShortMessage(ShortMessage.NOTE_ON,
-								midiCode, 75), System.currentTimeMillis());
+								midiCode, VELOCITY), -1);
 					} catch (InvalidMidiDataException e) {}
 				}
 			}
@@ -124,10 +127,12 @@ public class KeyboardPanel extends JPanel implements KeyListener,
 		public void noteOff() {
 			if (playing) {
 				playing = false;
-				if (receiver != null) {
+				if (noteReceiver != null) {
+					noteReceiver.noteOff(midiCode, System.nanoTime());
+				} else if (receiver != null) {
 					try {
 						receiver.send(new ShortMessage(ShortMessage.NOTE_OFF,
-								midiCode, 0), System.currentTimeMillis());
+								midiCode, 0), -1);
 					} catch (InvalidMidiDataException e) {}
 				}
 			}
@@ -217,14 +222,17 @@ public class KeyboardPanel extends JPanel implements KeyListener,
 	public void send(MidiMessage rawMessage, long timeStamp) {
 		if (rawMessage instanceof ShortMessage) {
 			ShortMessage message = (ShortMessage) rawMessage;
-			if (message.getCommand() == ShortMessage.NOTE_OFF
-					|| (message.getCommand() == ShortMessage.NOTE_ON && message
-							.getData2() == 0)) {
-				keysByMidi.get(message.getData1()).playing = false;
-				repaint();
-			} else if (message.getCommand() == ShortMessage.NOTE_ON) {
-				keysByMidi.get(message.getData1()).playing = true;
-				repaint();
+			Key key = keysByMidi.get(message.getData1());
+			if (key != null) {
+				if (message.getCommand() == ShortMessage.NOTE_OFF
+						|| (message.getCommand() == ShortMessage.NOTE_ON
+								&& message.getData2() == 0)) {
+					key.playing = false;
+					repaint();
+				} else if (message.getCommand() == ShortMessage.NOTE_ON) {
+					key.playing = true;
+					repaint();
+				}
 			}
 		}
 		if (receiver != null) {
@@ -265,4 +273,14 @@ public class KeyboardPanel extends JPanel implements KeyListener,
 		this.receiver = receiver;
 	}
 
+	NoteReceiver noteReceiver;
+
+	public NoteReceiver getNoteReceiver() {
+		return noteReceiver;
+	}
+
+	public void setNoteReceiver(NoteReceiver noteReceiver) {
+		this.noteReceiver = noteReceiver;
+	}
+
 }
@@ -0,0 +1,274 @@
+package synthesketch;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class Metrics implements MetricsMBean {
+
+	static final int HISTOGRAM_BUCKETS = 16;
+
+	Metrics(WaveformSynthesizer synth) {
+		this.synth = synth;
+	}
+
+	final WaveformSynthesizer synth;
+
+	final AtomicLong stolenNotes = new AtomicLong();
+	final AtomicLong droppedNotes = new AtomicLong();
+	final AtomicLong droppedEvents = new AtomicLong();
+
+	final AtomicLongArray renderTimes = new AtomicLongArray(
+			HISTOGRAM_BUCKETS);
+	volatile long blocks, underruns;
+	volatile long renderNanos, maxRenderNanos;
+	volatile double minHeadroom = 1, headroom;
+	volatile long latencies, latencyNanos, maxLatencyNanos;
+
+	void block(long nanos, double deadlineNanos) {
+		int bucket = 64 - Long.numberOfLeadingZeros(nanos / 1000);
+		bucket = Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+		renderTimes.lazySet(bucket, renderTimes.get(bucket) + 1);
+		blocks = blocks + 1;
+		renderNanos = renderNanos + nanos;
+		if (nanos > maxRenderNanos) {
+			maxRenderNanos = nanos;
+		}
+		double blockHeadroom = 1 - nanos / deadlineNanos;
+		headroom = headroom + blockHeadroom;
+		if (blockHeadroom < minHeadroom) {
+			minHeadroom = blockHeadroom;
+		}
+	}
+
+	void underrun() {
+		underruns = underruns + 1;
+	}
+
+	void latency(long nanos) {
+		latencies = latencies + 1;
+		latencyNanos = latencyNanos + nanos;
+		if (nanos > maxLatencyNanos) {
+			maxLatencyNanos = nanos;
+		}
+	}
+
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	public static class Snapshot {
+
+		Snapshot(Metrics metrics) {
+			VoiceAllocator voices = metrics.synth.voices;
+			if (voices != null) {
+				for (int voice = 0; voice < voices.size(); ++voice) {
+					int state = voices.state(voice);
+					if (state == VoiceAllocator.IDLE) {
+						++idleVoices;
+					} else if (state == VoiceAllocator.RELEASING) {
+						++releasingVoices;
+					} else {
+						++activeVoices;
+					}
+				}
+			}
+			stolenNotes = metrics.stolenNotes.get();
+			droppedNotes = metrics.droppedNotes.get();
+			droppedEvents = metrics.droppedEvents.get();
+			blocks = metrics.blocks;
+			underruns = metrics.underruns;
+			renderTimeHistogram = new long[HISTOGRAM_BUCKETS];
+			for (int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+				renderTimeHistogram[i] = metrics.renderTimes.get(i);
+			}
+			meanRenderTime = blocks > 0 ? metrics.renderNanos / 1e9 / blocks
+					: 0;
+			maxRenderTime = metrics.maxRenderNanos / 1e9;
+			meanHeadroom = blocks > 0 ? 100 * metrics.headroom / blocks : 100;
+			minHeadroom = 100 * metrics.minHeadroom;
+			long latencies = metrics.latencies;
+			meanLatency = latencies > 0 ? metrics.latencyNanos / 1e9
+					/ latencies : 0;
+			maxLatency = metrics.maxLatencyNanos / 1e9;
+		}
+
+		int activeVoices, releasingVoices, idleVoices;
+		final long stolenNotes, droppedNotes, droppedEvents;
+		final long blocks, underruns;
+		final long[] renderTimeHistogram;
+		final double meanRenderTime, maxRenderTime;
+		final double meanHeadroom, minHeadroom;
+		final double meanLatency, maxLatency;
+
+		public int getActiveVoices() {
+			return activeVoices;
+		}
+
+		public int getReleasingVoices() {
+			return releasingVoices;
+		}
+
+		public int getIdleVoices() {
+			return idleVoices;
+		}
+
+		public long getStolenNotes() {
+			return stolenNotes;
+		}
+
+		public long getDroppedNotes() {
+			return droppedNotes;
+		}
+
+		public long getDroppedEvents() {
+			return droppedEvents;
+		}
+
+		public long getBlocks() {
+			return blocks;
+		}
+
+		public long getUnderruns() {
+			return underruns;
+		}
+
+		public long[] getRenderTimeHistogram() {
+			return renderTimeHistogram.clone();
+		}
+
+		public static double getRenderTimeBucketLimit(int bucket) {
+			return bucket < HISTOGRAM_BUCKETS - 1 ? (1L << bucket) / 1e6
+					: Double.POSITIVE_INFINITY;
+		}
+
+		public double getMeanRenderTime() {
+			return meanRenderTime;
+		}
+
+		public double getMaxRenderTime() {
+			return maxRenderTime;
+		}
+
+		public double getMeanHeadroom() {
+			return meanHeadroom;
+		}
+
+		public double getMinHeadroom() {
+			return minHeadroom;
+		}
+
+		public double getMeanLatency() {
+			return meanLatency;
+		}
+
+		public double getMaxLatency() {
+			return maxLatency;
+		}
+
+	}
+
+	@Override
+	public int getActiveVoices() {
+		return snapshot().getActiveVoices();
+	}
+
+	@Override
+	public int getReleasingVoices() {
+		return snapshot().getReleasingVoices();
+	}
+
+	@Override
+	public int getIdleVoices() {
+		return snapshot().getIdleVoices();
+	}
+
+	@Override
+	public long getStolenNotes() {
+		return stolenNotes.get();
+	}
+
+	@Override
+	public long getDroppedNotes() {
+		return droppedNotes.get();
+	}
+
+	@Override
+	public long getDroppedEvents() {
+		return droppedEvents.get();
+	}
+
+	@Override
+	public long getBlocks() {
+		return blocks;
+	}
+
+	@Override
+	public long getUnderruns() {
+		return underruns;
+	}
+
+	@Override
+	public long[] getRenderTimeHistogram() {
+		return snapshot().getRenderTimeHistogram();
+	}
+
+	@Override
+	public double getMeanRenderTime() {
+		return snapshot().getMeanRenderTime();
+	}
+
+	@Override
+	public double getMaxRenderTime() {
+		return snapshot().getMaxRenderTime();
+	}
+
+	@Override
+	public double getMeanHeadroom() {
+		return snapshot().getMeanHeadroom();
+	}
+
+	@Override
+	public double getMinHeadroom() {
+		return snapshot().getMinHeadroom();
+	}
+
+	@Override
+	public double getMeanLatency() {
+		return snapshot().getMeanLatency();
+	}
+
+	@Override
+	public double getMaxLatency() {
+		return snapshot().getMaxLatency();
+	}
+
+	ObjectName name;
+
+	public synchronized ObjectName register() throws JMException {
+		if (name == null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			String id = Integer.toHexString(System.identityHashCode(synth));
+			ObjectName name = new ObjectName(
+					"synthesketch:type=WaveformSynthesizer,id=" + id);
+			server.registerMBean(this, name);
+			this.name = name;
+		}
+		return name;
+	}
+
+	public synchronized void unregister() {
+		if (name != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+						name);
+			} catch (JMException e) {}
+			name = null;
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+package synthesketch;
+
+public interface MetricsMBean {
+
+	int getActiveVoices();
+
+	int getReleasingVoices();
+
+	int getIdleVoices();
+
+	long getStolenNotes();
+
+	long getDroppedNotes();
+
+	long getDroppedEvents();
+
+	long getBlocks();
+
+	long getUnderruns();
+
+	long[] getRenderTimeHistogram();
+
+	double getMeanRenderTime();
+
+	double getMaxRenderTime();
+
+	double getMeanHeadroom();
+
+	double getMinHeadroom();
+
+	double getMeanLatency();
+
+	double getMaxLatency();
+
+}
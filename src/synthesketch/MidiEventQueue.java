@@ -0,0 +1,65 @@
+package synthesketch;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.midi.ShortMessage;
+
+class MidiEventQueue {
+
+	public MidiEventQueue(int capacity) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException(
+					"queue capacity must be a power of two");
+		}
+		messages = new int[capacity];
+		times = new long[capacity];
+		mask = capacity - 1;
+		reserved = capacity / RESERVED_FRACTION;
+	}
+
+	static final int RESERVED_FRACTION = 8;
+
+	final int[] messages;
+	final long[] times;
+	final int mask, reserved;
+
+	final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+
+	synchronized boolean offer(int message, long time) {
+		long tail = this.tail.get();
+		long free = messages.length - (tail - head.get());
+		if (free == 0 || (free <= reserved && !isNoteOff(message))) {
+			return false;
+		}
+		messages[(int) tail & mask] = message;
+		times[(int) tail & mask] = time;
+		this.tail.lazySet(tail + 1);
+		return true;
+	}
+
+	boolean isEmpty() {
+		return head.get() == tail.get();
+	}
+
+	long peekTime() {
+		return times[(int) head.get() & mask];
+	}
+
+	int poll() {
+		long head = this.head.get();
+		int message = messages[(int) head & mask];
+		this.head.lazySet(head + 1);
+		return message;
+	}
+
+	static boolean isNoteOff(int message) {
+		int command = message >> 16 & 0xf0;
+		return command == ShortMessage.NOTE_OFF
+				|| (command == ShortMessage.NOTE_ON && (message & 0x7f) == 0);
+	}
+
+	static int pack(int status, int data1, int data2) {
+		return (status & 0xff) << 16 | (data1 & 0x7f) << 8 | (data2 & 0x7f);
+	}
+
+}
@@ -0,0 +1,58 @@
+package synthesketch;
+
+import javax.sound.sampled.AudioFormat;
+
+abstract class MixKernel {
+
+	static final MixKernel SCALAR = new ScalarMixKernel();
+
+	static final MixKernel DEFAULT = load();
+
+	static MixKernel load() {
+		if (!Boolean.parseBoolean(System.getProperty("synthesketch.vector",
+				"true"))) {
+			return SCALAR;
+		}
+		try {
+			return (MixKernel) Class.forName("synthesketch.VectorMixKernel")
+					.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			return SCALAR;
+		} catch (LinkageError e) {
+			return SCALAR;
+		}
+	}
+
+	abstract void mixVoice(float[] mix, float[] voice, int offset,
+			int frames, float gain, float gainStep);
+
+	abstract void sum(float[] mix, float[] partial, int offset, int frames);
+
+	abstract PcmEncoder encoder(AudioFormat format);
+
+	static class ScalarMixKernel extends MixKernel {
+
+		@Override
+		void mixVoice(float[] mix, float[] voice, int offset, int frames,
+				float gain, float gainStep) {
+			for (int i = offset; i < offset + frames; ++i) {
+				mix[i] += gain * voice[i];
+				gain += gainStep;
+			}
+		}
+
+		@Override
+		void sum(float[] mix, float[] partial, int offset, int frames) {
+			for (int i = offset; i < offset + frames; ++i) {
+				mix[i] += partial[i];
+			}
+		}
+
+		@Override
+		PcmEncoder encoder(AudioFormat format) {
+			return PcmEncoder.forFormat(format);
+		}
+
+	}
+
+}
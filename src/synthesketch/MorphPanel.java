@@ -0,0 +1,68 @@
+package synthesketch;
+
+import java.awt.Dimension;
+
+import javax.swing.BorderFactory;
+import javax.swing.Box;
+import javax.swing.BoxLayout;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+@SuppressWarnings("serial")
+public class MorphPanel extends JPanel implements ChangeListener {
+
+	public MorphPanel(WaveformSynthesizer synth) {
+		this.synth = synth;
+
+		positionSlider = slider(0, 100, synth.getMorph() * 100);
+		velocitySlider = slider(-100, 100, synth.getMorphVelocity() * 100);
+		lfoRateSlider = slider(0, 200, synth.getMorphLfoRate() * 10);
+		lfoDepthSlider = slider(0, 100, synth.getMorphLfoDepth() * 100);
+
+		setPreferredSize(new Dimension(400, 170));
+		setLayout(new BoxLayout(this, BoxLayout.PAGE_AXIS));
+		setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+		add(row("Position:", positionSlider));
+		add(row("Velocity:", velocitySlider));
+		add(row("LFO Rate:", lfoRateSlider));
+		add(row("LFO Depth:", lfoDepthSlider));
+	}
+
+	final WaveformSynthesizer synth;
+	final JSlider positionSlider, velocitySlider, lfoRateSlider,
+			lfoDepthSlider;
+
+	JSlider slider(int min, int max, double value) {
+		JSlider slider = new JSlider(min, max, (int) Math.round(value));
+		slider.addChangeListener(this);
+		return slider;
+	}
+
+	static JPanel row(String label, JSlider slider) {
+		JLabel rowLabel = new JLabel(label);
+		rowLabel.setPreferredSize(new Dimension(80, 20));
+		JPanel row = new JPanel();
+		row.setLayout(new BoxLayout(row, BoxLayout.LINE_AXIS));
+		row.add(rowLabel);
+		row.add(Box.createRigidArea(new Dimension(10, 10)));
+		row.add(slider);
+		return row;
+	}
+
+	@Override
+	public void stateChanged(ChangeEvent e) {
+		if (e.getSource() == positionSlider) {
+			synth.setMorph(positionSlider.getValue() / 100.0);
+		} else if (e.getSource() == velocitySlider) {
+			synth.setMorphVelocity(velocitySlider.getValue() / 100.0);
+		} else if (e.getSource() == lfoRateSlider) {
+			synth.setMorphLfoRate(lfoRateSlider.getValue() / 10.0);
+		} else if (e.getSource() == lfoDepthSlider) {
+			synth.setMorphLfoDepth(lfoDepthSlider.getValue() / 100.0);
+		}
+	}
+
+}
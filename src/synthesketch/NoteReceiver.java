@@ -0,0 +1,9 @@
+package synthesketch;
+
+public interface NoteReceiver {
+
+	public void noteOn(int midiCode, int velocity, long nanoTime);
+
+	public void noteOff(int midiCode, long nanoTime);
+
+}
@@ -0,0 +1,186 @@
+package synthesketch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFormat;
+
+class OfflineRenderer extends InputStream {
+
+	public OfflineRenderer(WaveformSynthesizer template, double[] waveform,
+			Sequence sequence, AudioFormat format) {
+		synth = new WaveformSynthesizer();
+		synth.format = format;
+		synth.numberOfOscillators = template.numberOfOscillators > 0 ? template.numberOfOscillators
+				: WaveformSynthesizer.DEFAULT_OSCILLATORS;
+		synth.voiceStealingPolicy = template.voiceStealingPolicy;
+		synth.envelope = template.envelope;
+		synth.portamento = template.portamento;
+		synth.renderThreads = template.renderThreads;
+		synth.multitimbral = template.multitimbral;
+		synth.morph = template.morph;
+		synth.morphVelocity = template.morphVelocity;
+		synth.morphLfoRate = template.morphLfoRate;
+		synth.morphLfoDepth = template.morphLfoDepth;
+		synth.morphController = template.morphController;
+		for (int i = 0; i < WaveformSynthesizer.CHANNELS; ++i) {
+			synth.channels[i].wavetable = template.channels[i].wavetable;
+			synth.channels[i].envelope = template.channels[i].envelope;
+		}
+		synth.createVoices();
+		if (waveform != null) {
+			synth.waveform = waveform;
+			synth.wavetable = Wavetable.create(waveform);
+		} else {
+			synth.waveform = template.waveform;
+			synth.wavetable = template.wavetable;
+			synth.frames = template.frames;
+		}
+		renderer = synth.new Renderer(null, format);
+		synth.renderer = renderer;
+		this.format = format;
+		mix = new float[WaveformSynthesizer.BLOCK_IN_FRAMES];
+		block = new byte[WaveformSynthesizer.BLOCK_IN_FRAMES
+				* format.getFrameSize()];
+		collectEvents(sequence);
+		double release = synth.envelope.release;
+		for (int i = 0; i < WaveformSynthesizer.CHANNELS; ++i) {
+			release = Math.max(release, synth.getEnvelope(i).release);
+		}
+		long tail = (long) Math.ceil(release * format.getFrameRate());
+		frameLength = (eventFrames.length > 0 ? eventFrames[eventFrames.length - 1]
+				: 0)
+				+ tail + WaveformSynthesizer.BLOCK_IN_FRAMES;
+	}
+
+	final WaveformSynthesizer synth;
+	final WaveformSynthesizer.Renderer renderer;
+	final AudioFormat format;
+	final float[] mix;
+	final byte[] block;
+
+	long[] eventFrames;
+	MidiMessage[] eventMessages;
+	int nextEvent;
+
+	final long frameLength;
+	long frame;
+
+	int blockPosition, blockLength;
+
+	public long getFrameLength() {
+		return frameLength;
+	}
+
+	void collectEvents(Sequence sequence) {
+		List<MidiEvent> events = new ArrayList<MidiEvent>();
+		for (Track track : sequence.getTracks()) {
+			for (int i = 0; i < track.size(); ++i) {
+				events.add(track.get(i));
+			}
+		}
+		Collections.sort(events, new Comparator<MidiEvent>() {
+			public int compare(MidiEvent a, MidiEvent b) {
+				return a.getTick() < b.getTick() ? -1
+						: a.getTick() > b.getTick() ? 1 : 0;
+			}
+		});
+		eventFrames = new long[events.size()];
+		eventMessages = new MidiMessage[events.size()];
+		double microsPerTick;
+		if (sequence.getDivisionType() == Sequence.PPQ) {
+			microsPerTick = (double) DEFAULT_TEMPO / sequence.getResolution();
+		} else {
+			microsPerTick = 1e6 / (sequence.getDivisionType() * sequence
+					.getResolution());
+		}
+		long lastTick = 0;
+		double micros = 0;
+		for (int i = 0; i < events.size(); ++i) {
+			MidiEvent event = events.get(i);
+			micros += (event.getTick() - lastTick) * microsPerTick;
+			lastTick = event.getTick();
+			eventFrames[i] = (long) (micros * format.getFrameRate() / 1e6);
+			eventMessages[i] = event.getMessage();
+			if (sequence.getDivisionType() == Sequence.PPQ
+					&& event.getMessage() instanceof MetaMessage) {
+				MetaMessage message = (MetaMessage) event.getMessage();
+				byte[] data = message.getData();
+				if (message.getType() == TEMPO && data.length == 3) {
+					int tempo = (data[0] & 0xff) << 16 | (data[1] & 0xff) << 8
+							| (data[2] & 0xff);
+					microsPerTick = (double) tempo / sequence.getResolution();
+				}
+			}
+		}
+	}
+
+	static final int TEMPO = 0x51;
+	static final int DEFAULT_TEMPO = 500000;
+
+	int renderBlock() {
+		while (nextEvent < eventFrames.length
+				&& eventFrames[nextEvent] <= frame) {
+			MidiMessage message = eventMessages[nextEvent++];
+			if (message instanceof ShortMessage) {
+				ShortMessage shortMessage = (ShortMessage) message;
+				synth.apply(MidiEventQueue.pack(shortMessage.getStatus(),
+						shortMessage.getData1(), shortMessage.getData2()));
+			}
+		}
+		if (frame >= frameLength) {
+			renderer.close();
+			return -1;
+		}
+		long end = Math.min(frameLength, frame
+				+ WaveformSynthesizer.BLOCK_IN_FRAMES);
+		if (nextEvent < eventFrames.length) {
+			end = Math.min(end, eventFrames[nextEvent]);
+		}
+		int frames = (int) (end - frame);
+		Arrays.fill(mix, 0, frames, 0);
+		renderer.render(mix, 0, frames);
+		renderer.encoder.encode(mix, frames, block);
+		frame = end;
+		return frames * format.getFrameSize();
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (blockPosition == blockLength) {
+			blockPosition = 0;
+			blockLength = renderBlock();
+			if (blockLength < 0) {
+				blockLength = 0;
+				return -1;
+			}
+		}
+		int read = Math.min(len, blockLength - blockPosition);
+		System.arraycopy(block, blockPosition, b, off, read);
+		blockPosition += read;
+		return read;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return blockLength - blockPosition;
+	}
+
+}
@@ -0,0 +1,127 @@
+package synthesketch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class Patch {
+
+	static final int MAGIC = 0x54504b53;
+	static final int VERSION = 1;
+	static final int HEADER_IN_BYTES = 36;
+
+	Patch(ByteBuffer buffer) throws IOException {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < HEADER_IN_BYTES
+				|| buffer.getInt(0) != MAGIC) {
+			throw new IOException("not a synthesketch patch");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("unsupported patch version "
+					+ buffer.getInt(4));
+		}
+		int tableLength = buffer.getInt(8), levels = buffer.getInt(12);
+		int waveformLength = buffer.getInt(16);
+		if (tableLength != Wavetable.LENGTH || levels != Wavetable.LEVELS
+				|| waveformLength < 1) {
+			throw new IOException("unsupported patch wavetable layout");
+		}
+		if (buffer.capacity() < HEADER_IN_BYTES + 4L
+				* (waveformLength + (long) levels * tableLength)) {
+			throw new IOException("truncated patch");
+		}
+		try {
+			envelope = new Envelope(buffer.getFloat(20),
+					buffer.getFloat(24), buffer.getFloat(28),
+					buffer.getFloat(32));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("invalid patch envelope", e);
+		}
+		buffer.position(HEADER_IN_BYTES);
+		waveform = slice(buffer, waveformLength);
+		FloatBuffer[] tables = new FloatBuffer[levels];
+		for (int level = 0; level < levels; ++level) {
+			tables[level] = slice(buffer, tableLength);
+		}
+		wavetable = new Wavetable.BufferWavetable(tables);
+	}
+
+	static FloatBuffer slice(ByteBuffer buffer, int length) {
+		ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		slice.limit(4 * length);
+		buffer.position(buffer.position() + 4 * length);
+		return slice.asFloatBuffer();
+	}
+
+	final Envelope envelope;
+	final FloatBuffer waveform;
+	final Wavetable wavetable;
+
+	public Envelope getEnvelope() {
+		return envelope;
+	}
+
+	public double[] getWaveform() {
+		double[] waveform = new double[this.waveform.capacity()];
+		for (int i = 0; i < waveform.length; ++i) {
+			waveform[i] = this.waveform.get(i);
+		}
+		return waveform;
+	}
+
+	public static Patch load(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			if (in.length() > Integer.MAX_VALUE) {
+				throw new IOException("patch too large");
+			}
+			MappedByteBuffer buffer = in.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, 0, in.length());
+			return new Patch(buffer);
+		} finally {
+			in.close();
+		}
+	}
+
+	public static void save(File file, double[] waveform, Envelope envelope)
+			throws IOException {
+		Wavetable wavetable = Wavetable.create(waveform);
+		ByteBuffer buffer = ByteBuffer.allocate(
+				HEADER_IN_BYTES + 4
+						* (waveform.length + Wavetable.LEVELS
+								* Wavetable.LENGTH)).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(Wavetable.LENGTH)
+				.putInt(Wavetable.LEVELS).putInt(waveform.length);
+		buffer.putFloat((float) envelope.attack)
+				.putFloat((float) envelope.decay)
+				.putFloat((float) envelope.sustain)
+				.putFloat((float) envelope.release);
+		for (double sample : waveform) {
+			buffer.putFloat((float) sample);
+		}
+		float[] table = new float[Wavetable.LENGTH];
+		for (int level = 0; level < Wavetable.LEVELS; ++level) {
+			wavetable.get(level, table);
+			buffer.asFloatBuffer().put(table);
+			buffer.position(buffer.position() + 4 * table.length);
+		}
+		buffer.flip();
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package synthesketch;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
+
+abstract class PcmEncoder {
+
+	static PcmEncoder forFormat(AudioFormat format) {
+		boolean signed = format.getEncoding() == Encoding.PCM_SIGNED;
+		switch (format.getSampleSizeInBits()) {
+		case 8:
+			return new Pcm8Encoder(format.getChannels(), signed);
+		case 16:
+			return new Pcm16Encoder(format.getChannels(), signed,
+					format.isBigEndian());
+		case 32:
+			return new Pcm32Encoder(format.getChannels(), signed,
+					format.isBigEndian());
+		default:
+			throw new IllegalArgumentException(
+					"only 1, 2, and 4 byte samples are currently supported");
+		}
+	}
+
+	PcmEncoder(int channels) {
+		this.channels = channels;
+	}
+
+	final int channels;
+
+	static final float GAIN = 1f / WaveformSynthesizer.VOLUME_DIVISOR;
+
+	abstract void encode(float[] mix, int frames, byte[] block);
+
+	static float clip(float sample) {
+		sample *= GAIN;
+		return sample > 1 ? 1 : sample < -1 ? -1 : sample;
+	}
+
+	static class Pcm8Encoder extends PcmEncoder {
+
+		Pcm8Encoder(int channels, boolean signed) {
+			super(channels);
+			offset = signed ? 0 : 0x80;
+		}
+
+		final int offset;
+
+		@Override
+		void encode(float[] mix, int frames, byte[] block) {
+			for (int i = 0, p = 0; i < frames; ++i) {
+				byte sample = (byte) ((int) (clip(mix[i]) * Byte.MAX_VALUE)
+						^ offset);
+				for (int j = 0; j < channels; ++j) {
+					block[p++] = sample;
+				}
+			}
+		}
+
+	}
+
+	static class Pcm16Encoder extends PcmEncoder {
+
+		Pcm16Encoder(int channels, boolean signed, boolean bigEndian) {
+			super(channels);
+			offset = signed ? 0 : 0x8000;
+			high = bigEndian ? 0 : 1;
+			low = 1 - high;
+		}
+
+		final int offset, high, low;
+
+		@Override
+		void encode(float[] mix, int frames, byte[] block) {
+			for (int i = 0, p = 0; i < frames; ++i) {
+				int sample = (int) (clip(mix[i]) * Short.MAX_VALUE) ^ offset;
+				byte highByte = (byte) (sample >> 8), lowByte = (byte) sample;
+				for (int j = 0; j < channels; ++j, p += 2) {
+					block[p + high] = highByte;
+					block[p + low] = lowByte;
+				}
+			}
+		}
+
+	}
+
+	static class Pcm32Encoder extends PcmEncoder {
+
+		Pcm32Encoder(int channels, boolean signed, boolean bigEndian) {
+			super(channels);
+			offset = signed ? 0 : 0x80000000;
+			shift0 = bigEndian ? 24 : 0;
+			shift1 = bigEndian ? 16 : 8;
+			shift2 = bigEndian ? 8 : 16;
+			shift3 = bigEndian ? 0 : 24;
+		}
+
+		final int offset, shift0, shift1, shift2, shift3;
+
+		@Override
+		void encode(float[] mix, int frames, byte[] block) {
+			for (int i = 0, p = 0; i < frames; ++i) {
+				int sample = (int) (clip(mix[i]) * (double) Integer.MAX_VALUE)
+						^ offset;
+				for (int j = 0; j < channels; ++j, p += 4) {
+					block[p] = (byte) (sample >> shift0);
+					block[p + 1] = (byte) (sample >> shift1);
+					block[p + 2] = (byte) (sample >> shift2);
+					block[p + 3] = (byte) (sample >> shift3);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,41 @@
+package synthesketch;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+class ScopeBuffer {
+
+	public ScopeBuffer(int capacity) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException(
+					"scope capacity must be a power of two");
+		}
+		samples = new float[capacity];
+	}
+
+	final float[] samples;
+	final AtomicLong position = new AtomicLong();
+
+	void write(float[] mix, int frames) {
+		long position = this.position.get();
+		int start = (int) (position & (samples.length - 1));
+		int first = Math.min(frames, samples.length - start);
+		System.arraycopy(mix, 0, samples, start, first);
+		System.arraycopy(mix, first, samples, 0, frames - first);
+		this.position.lazySet(position + frames);
+	}
+
+	boolean read(float[] frames, int length) {
+		long end = position.get();
+		if (end < length) {
+			return false;
+		}
+		long from = end - length;
+		int start = (int) (from & (samples.length - 1));
+		int first = Math.min(length, samples.length - start);
+		System.arraycopy(samples, start, frames, 0, first);
+		System.arraycopy(samples, 0, frames, first, length - first);
+		return position.get() + WaveformSynthesizer.BLOCK_IN_FRAMES - from
+				<= samples.length;
+	}
+
+}
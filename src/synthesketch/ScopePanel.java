@@ -0,0 +1,128 @@
+package synthesketch;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+@SuppressWarnings("serial")
+public class ScopePanel extends JPanel {
+
+	public ScopePanel(WaveformSynthesizer synth) {
+		this.synth = synth;
+		setPreferredSize(SIZE);
+		buffer = new ScopeBuffer(BUFFER_IN_FRAMES);
+		frames = new float[FFT_LENGTH];
+		re = new double[FFT_LENGTH];
+		im = new double[FFT_LENGTH];
+		window = new double[FFT_LENGTH];
+		for (int i = 0; i < FFT_LENGTH; ++i) {
+			window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / FFT_LENGTH);
+		}
+		xs = new int[SIZE.width];
+		for (int x = 0; x < xs.length; ++x) {
+			xs[x] = x;
+		}
+		scopeYs = new int[SIZE.width];
+		Arrays.fill(scopeYs, SIZE.height / 4);
+		spectrumYs = new int[SIZE.width];
+		Arrays.fill(spectrumYs, SIZE.height);
+		timer = new Timer(1000 / FRAMES_PER_SECOND, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (buffer.read(frames, FFT_LENGTH)) {
+					trace();
+					repaint();
+				}
+			}
+		});
+	}
+
+	final WaveformSynthesizer synth;
+	final ScopeBuffer buffer;
+	final float[] frames;
+	final double[] re, im, window;
+	final int[] xs, scopeYs, spectrumYs;
+	final Timer timer;
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		synth.scope = buffer;
+		timer.start();
+	}
+
+	@Override
+	public void removeNotify() {
+		timer.stop();
+		if (synth.scope == buffer) {
+			synth.scope = null;
+		}
+		super.removeNotify();
+	}
+
+	void trace() {
+		int height = SIZE.height / 2;
+		int trigger = 0;
+		for (int i = 1; i < FFT_LENGTH - SIZE.width; ++i) {
+			if (frames[i - 1] < 0 && frames[i] >= 0) {
+				trigger = i;
+				break;
+			}
+		}
+		for (int x = 0; x < SIZE.width; ++x) {
+			scopeYs[x] = height / 2
+					- (int) (PcmEncoder.clip(frames[trigger + x]) * height / 2);
+		}
+		for (int i = 0; i < FFT_LENGTH; ++i) {
+			re[i] = PcmEncoder.clip(frames[i]) * window[i];
+			im[i] = 0;
+		}
+		Wavetable.fft(re, im, false);
+		AudioFormat format = synth.getAudioFormat();
+		double nyquist = format != null ? format.getFrameRate() / 2
+				: FFT_LENGTH / 2;
+		for (int x = 0; x < SIZE.width; ++x) {
+			double frequency = MIN_FREQUENCY
+					* Math.pow(nyquist / MIN_FREQUENCY, (double) x
+							/ SIZE.width);
+			int bin = Math.min(FFT_LENGTH / 2,
+					(int) (frequency / nyquist * FFT_LENGTH / 2));
+			double magnitude = Math.hypot(re[bin], im[bin]) * 4 / FFT_LENGTH;
+			double decibels = 20 * Math.log10(Math.max(magnitude, 1e-9));
+			spectrumYs[x] = SIZE.height
+					- (int) (Math.max(0, decibels - MIN_DECIBELS)
+							/ -MIN_DECIBELS * height);
+		}
+	}
+
+	static final Dimension SIZE = new Dimension(300, 400);
+	static final int BUFFER_IN_FRAMES = 8192;
+	static final int FFT_LENGTH = 2048;
+	static final int FRAMES_PER_SECOND = 30;
+	static final double MIN_FREQUENCY = 20;
+	static final double MIN_DECIBELS = -96;
+
+	@Override
+	public void paint(Graphics g) {
+		((Graphics2D) g).setBackground(Color.BLACK);
+		g.clearRect(0, 0, SIZE.width, SIZE.height);
+		g.setColor(Color.DARK_GRAY);
+		g.drawLine(0, SIZE.height / 4, SIZE.width, SIZE.height / 4);
+		g.drawLine(0, SIZE.height / 2, SIZE.width, SIZE.height / 2);
+		g.setColor(Color.GREEN);
+		g.drawPolyline(xs, scopeYs, SIZE.width);
+		g.setColor(Color.CYAN);
+		g.drawPolyline(xs, spectrumYs, SIZE.width);
+		g.setColor(Color.WHITE);
+		g.drawString("Scope", 10, 20);
+		g.drawString("Spectrum", 10, SIZE.height / 2 + 20);
+	}
+
+}
@@ -1,15 +1,19 @@
 package synthesketch;
 
+import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
 
+import javax.management.JMException;
 import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiUnavailableException;
 import javax.sound.sampled.AudioFormat;
 import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JDialog;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
@@ -25,10 +29,23 @@ public class Synthesketch extends JFrame {
 
 	public Synthesketch() {
 		waveformPanel = new WaveformPanel();
-		waveformPanel.setWaveform(Waveforms.SINE_WAVE);
+		waveformPanel.setWaveform(Waveforms.SINE.getSamples());
 		waveformPanel.addChangeListener(new ChangeListener() {
 			public void stateChanged(ChangeEvent e) {
-				synth.setWaveform(waveformPanel.getWaveform());
+				if (waveformPanel.getFrameCount() > 1) {
+					synth.setFrame(waveformPanel.getFrame(),
+							waveformPanel.getWaveform());
+				} else if (!waveformPanel.isStreaming()) {
+					synth.setWaveform(waveformPanel.getWaveform());
+				}
+			}
+		});
+		waveformPanel.setStreaming(true);
+		waveformPanel.addWaveformEditListener(new WaveformEditListener() {
+			public void waveformEdited(WaveformPanel source, int from, int to) {
+				if (source.getFrameCount() == 1) {
+					synth.editWaveform(source.getWaveform(), from, to);
+				}
 			}
 		});
 
@@ -77,8 +94,17 @@ public class Synthesketch extends JFrame {
 		} catch (Exception e) {
 			System.err.println("error: " + e.getMessage());
 		}
-		synth.setWaveform(waveformPanel.getWaveform());
+		synth.setWaveform(Waveforms.SINE);
+		try {
+			synth.getMetrics().register();
+		} catch (JMException e) {
+			System.err.println("error: " + e.getMessage());
+		}
 		synth.setTransmitter(keyboardPanel);
+		keyboardPanel.setNoteReceiver(synth);
+
+		scopePanel = new ScopePanel(synth);
+		morphPanel = new MorphPanel(synth);
 
 		keyboardDialog = new JDialog(this, "Keyboard", false);
 		keyboardDialog.add(keyboardPanel);
@@ -109,6 +135,15 @@ public class Synthesketch extends JFrame {
 			}
 		});
 
+		morphDialog = new JDialog(this, "Morph", false);
+		morphDialog.add(morphPanel);
+		morphDialog.pack();
+		morphDialog.addWindowListener(new WindowAdapter() {
+			public void windowClosing(WindowEvent e) {
+				morphMenuItem.setSelected(false);
+			}
+		});
+
 		keyboardMenuItem = new JCheckBoxMenuItem("Keyboard");
 		keyboardMenuItem.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
@@ -130,6 +165,13 @@ public class Synthesketch extends JFrame {
 			}
 		});
 
+		morphMenuItem = new JCheckBoxMenuItem("Morph");
+		morphMenuItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				morphDialog.setVisible(morphMenuItem.isSelected());
+			}
+		});
+
 		JMenuItem quitMenuItem = new JMenuItem("Quit");
 		quitMenuItem.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
@@ -141,37 +183,108 @@ public class Synthesketch extends JFrame {
 		windowMenu.add(keyboardMenuItem);
 		windowMenu.add(audioPrefsMenuItem);
 		windowMenu.add(midiPrefsMenuItem);
+		windowMenu.add(morphMenuItem);
 		windowMenu.add(new JSeparator());
 		windowMenu.add(quitMenuItem);
 
-		JMenuItem sineWaveMenuItem = new JMenuItem("Load Sine Wave");
-		sineWaveMenuItem.addActionListener(new ActionListener() {
+		final JCheckBoxMenuItem streamingMenuItem = new JCheckBoxMenuItem(
+				"Play While Drawing", waveformPanel.isStreaming());
+		streamingMenuItem.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				waveformPanel.setWaveform(Waveforms.SINE_WAVE);
-				synth.setWaveform(waveformPanel.getWaveform());
+				waveformPanel.setStreaming(streamingMenuItem.isSelected());
 			}
 		});
 
-		JMenuItem squareWaveMenuItem = new JMenuItem("Load Square Wave");
-		squareWaveMenuItem.addActionListener(new ActionListener() {
+		JMenuItem addFrameMenuItem = new JMenuItem("Add Frame");
+		addFrameMenuItem.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				waveformPanel.setWaveform(Waveforms.SQUARE_WAVE);
-				synth.setWaveform(waveformPanel.getWaveform());
+				waveformPanel.addFrame();
+				updateFrames();
 			}
 		});
 
-		JMenuItem sawWaveMenuItem = new JMenuItem("Load Saw Wave");
-		sawWaveMenuItem.addActionListener(new ActionListener() {
+		JMenuItem removeFrameMenuItem = new JMenuItem("Remove Frame");
+		removeFrameMenuItem.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				waveformPanel.setWaveform(Waveforms.SAW_WAVE);
-				synth.setWaveform(waveformPanel.getWaveform());
+				waveformPanel.removeFrame();
+				updateFrames();
+			}
+		});
+
+		JMenuItem previousFrameMenuItem = new JMenuItem("Previous Frame");
+		previousFrameMenuItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				int frames = waveformPanel.getFrameCount();
+				waveformPanel.setFrame((waveformPanel.getFrame() + frames - 1)
+						% frames);
+			}
+		});
+
+		JMenuItem nextFrameMenuItem = new JMenuItem("Next Frame");
+		nextFrameMenuItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				waveformPanel.setFrame((waveformPanel.getFrame() + 1)
+						% waveformPanel.getFrameCount());
+			}
+		});
+
+		patchChooser = new JFileChooser();
+
+		JMenuItem openPatchMenuItem = new JMenuItem("Open Patch...");
+		openPatchMenuItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (patchChooser.showOpenDialog(Synthesketch.this)
+						== JFileChooser.APPROVE_OPTION) {
+					try {
+						Patch patch = Patch.load(patchChooser
+								.getSelectedFile());
+						waveformPanel.setWaveform(patch.getWaveform());
+						synth.setPatch(patch);
+					} catch (IOException ex) {
+						System.err.println("error: " + ex.getMessage());
+					}
+				}
+			}
+		});
+
+		JMenuItem savePatchMenuItem = new JMenuItem("Save Patch...");
+		savePatchMenuItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (patchChooser.showSaveDialog(Synthesketch.this)
+						== JFileChooser.APPROVE_OPTION) {
+					try {
+						Patch.save(patchChooser.getSelectedFile(),
+								waveformPanel.getWaveform(),
+								synth.getEnvelope());
+					} catch (IOException ex) {
+						System.err.println("error: " + ex.getMessage());
+					}
+				}
 			}
 		});
 
 		JMenu waveformMenu = new JMenu("Waveform");
-		waveformMenu.add(sineWaveMenuItem);
-		waveformMenu.add(squareWaveMenuItem);
-		waveformMenu.add(sawWaveMenuItem);
+		for (final Waveform waveform : Waveforms.getAll()) {
+			JMenuItem waveformMenuItem = new JMenuItem("Load "
+					+ waveform.getName() + " Wave");
+			waveformMenuItem.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					waveformPanel.setWaveform(waveform.getSamples());
+					synth.setWaveform(waveform);
+				}
+			});
+			waveformMenu.add(waveformMenuItem);
+		}
+		waveformMenu.add(new JSeparator());
+		waveformMenu.add(streamingMenuItem);
+		waveformMenu.add(new JSeparator());
+		waveformMenu.add(addFrameMenuItem);
+		waveformMenu.add(removeFrameMenuItem);
+		waveformMenu.add(previousFrameMenuItem);
+		waveformMenu.add(nextFrameMenuItem);
+		waveformMenu.add(new JSeparator());
+		waveformMenu.add(openPatchMenuItem);
+		waveformMenu.add(savePatchMenuItem);
 
 		JOptionPane aboutDialogTemplate = new JOptionPane(
 				"An arbitrary waveform synthesizer with a simple sketch-based interface\n\n"
@@ -198,26 +311,40 @@ public class Synthesketch extends JFrame {
 
 		setJMenuBar(menubar);
 		add(waveformPanel);
+		add(scopePanel, BorderLayout.EAST);
 		pack();
 		setTitle("Synthesketch");
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		setResizable(false);
 	}
 
+	void updateFrames() {
+		if (waveformPanel.getFrameCount() > 1) {
+			synth.setFrames(waveformPanel.getFrames());
+		} else {
+			synth.setWaveform(waveformPanel.getWaveform());
+		}
+	}
+
 	static final AudioFormat FORMAT = new AudioFormat(44100, 16, 1, true, false);
 
 	WaveformSynthesizer synth;
 
-	JDialog keyboardDialog, audioPrefsDialog, midiPrefsDialog;
+	JDialog keyboardDialog, audioPrefsDialog, midiPrefsDialog, morphDialog;
 	WaveformPanel waveformPanel;
+	ScopePanel scopePanel;
+	MorphPanel morphPanel;
 	KeyboardPanel keyboardPanel;
 	AudioPreferencesPanel audioPrefsPanel;
 	MidiPreferencesPanel midiPrefsPanel;
 
-	JCheckBoxMenuItem keyboardMenuItem, audioPrefsMenuItem, midiPrefsMenuItem;
+	JCheckBoxMenuItem keyboardMenuItem, audioPrefsMenuItem, midiPrefsMenuItem,
+			morphMenuItem;
 
 	JDialog aboutDialog;
 
+	JFileChooser patchChooser;
+
 	public static void main(String[] args) {
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
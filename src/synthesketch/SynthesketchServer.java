@@ -0,0 +1,355 @@
+package synthesketch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.JMException;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaEventListener;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequencer;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+
+public class SynthesketchServer {
+
+	public SynthesketchServer(Properties options) throws IOException,
+			LineUnavailableException, UnsupportedAudioFormatException {
+		this.options = options;
+		AudioFormat format = new AudioFormat(
+				Float.parseFloat(options.getProperty("rate", "44100")),
+				Integer.parseInt(options.getProperty("bits", "16")),
+				Integer.parseInt(options.getProperty("channels", "1")),
+				Boolean.parseBoolean(options.getProperty("signed", "true")),
+				Boolean.parseBoolean(options.getProperty("big-endian",
+						"false")));
+		synth = new WaveformSynthesizer();
+		synth.setRenderThreads(Integer.parseInt(options.getProperty(
+				"threads", "1")));
+		synth.setMultitimbral(Boolean.parseBoolean(options.getProperty(
+				"multitimbral", "false")));
+		int voices = Integer.parseInt(options.getProperty("voices",
+				String.valueOf(WaveformSynthesizer.DEFAULT_OSCILLATORS)));
+		double bufferSize = Double.parseDouble(options.getProperty("buffer",
+				String.valueOf(WaveformSynthesizer.DEFAULT_BUFFER_IN_SECONDS)));
+		synth.setOutput(mixer(options.getProperty("mixer"), format), format,
+				voices, bufferSize);
+		if (options.getProperty("patch") != null) {
+			synth.setPatch(Patch.load(new File(options.getProperty("patch"))));
+		} else {
+			String name = options.getProperty("waveform", "Sine");
+			Waveform waveform = Waveforms.get(name);
+			if (waveform == null) {
+				throw new IllegalArgumentException("unknown waveform: "
+						+ name);
+			}
+			synth.setWaveform(waveform);
+		}
+	}
+
+	final Properties options;
+	final WaveformSynthesizer synth;
+
+	static Mixer mixer(String name, AudioFormat format) {
+		for (Mixer.Info info : AudioSystem.getMixerInfo()) {
+			if (name == null || info.getName().contains(name)) {
+				try {
+					AudioSystem.getSourceDataLine(format, info);
+					return AudioSystem.getMixer(info);
+				} catch (Exception e) {}
+			}
+		}
+		throw new IllegalArgumentException("no mixer "
+				+ (name != null ? "matching " + name + " " : "")
+				+ "supports " + format);
+	}
+
+	public WaveformSynthesizer getSynthesizer() {
+		return synth;
+	}
+
+	public void serve() throws InterruptedException {
+		List<Thread> sources = new ArrayList<Thread>();
+		if (options.getProperty("tcp") != null) {
+			final int port = Integer.parseInt(options.getProperty("tcp"));
+			sources.add(source("tcp", new Source() {
+				public void run() throws IOException {
+					serveTcp(port);
+				}
+			}));
+		}
+		if (options.getProperty("udp") != null) {
+			final int port = Integer.parseInt(options.getProperty("udp"));
+			sources.add(source("udp", new Source() {
+				public void run() throws IOException {
+					serveUdp(port);
+				}
+			}));
+		}
+		if (options.getProperty("pipe") != null) {
+			final File pipe = new File(options.getProperty("pipe"));
+			sources.add(source("pipe", new Source() {
+				public void run() throws IOException {
+					servePipe(pipe);
+				}
+			}));
+		}
+		if (options.getProperty("midi") != null) {
+			final File file = new File(options.getProperty("midi"));
+			sources.add(source("midi file", new Source() {
+				public void run() throws IOException {
+					play(file);
+				}
+			}));
+		}
+		if (sources.isEmpty()) {
+			sources.add(source("stdin", new Source() {
+				public void run() throws IOException {
+					serve(System.in);
+				}
+			}));
+		}
+		for (Thread source : sources) {
+			source.join();
+		}
+	}
+
+	interface Source {
+
+		void run() throws IOException;
+
+	}
+
+	Thread source(final String name, final Source source) {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					source.run();
+				} catch (IOException e) {
+					System.err.println("error: " + name + ": "
+							+ e.getMessage());
+				}
+			}
+		}, name);
+		thread.start();
+		return thread;
+	}
+
+	void serveTcp(int port) throws IOException {
+		ServerSocket server = new ServerSocket(port, 1,
+				InetAddress.getLoopbackAddress());
+		try {
+			while (true) {
+				Socket client = server.accept();
+				try {
+					serve(client.getInputStream());
+				} catch (IOException e) {
+					System.err.println("error: tcp client "
+							+ client.getRemoteSocketAddress() + ": "
+							+ e.getMessage());
+				} finally {
+					client.close();
+				}
+			}
+		} finally {
+			server.close();
+		}
+	}
+
+	void serveUdp(int port) throws IOException {
+		DatagramSocket socket = new DatagramSocket(port,
+				InetAddress.getLoopbackAddress());
+		try {
+			MidiParser parser = new MidiParser(synth);
+			DatagramPacket packet = new DatagramPacket(new byte[BUFFER_SIZE],
+					BUFFER_SIZE);
+			while (true) {
+				socket.receive(packet);
+				parser.reset();
+				parser.parse(packet.getData(), packet.getOffset(),
+						packet.getLength());
+			}
+		} finally {
+			socket.close();
+		}
+	}
+
+	void servePipe(File pipe) throws IOException {
+		while (true) {
+			InputStream in = new FileInputStream(pipe);
+			try {
+				serve(in);
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	void serve(InputStream in) throws IOException {
+		MidiParser parser = new MidiParser(synth);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		for (int length = in.read(buffer); length >= 0; length = in
+				.read(buffer)) {
+			parser.parse(buffer, 0, length);
+		}
+	}
+
+	void play(File file) throws IOException {
+		try {
+			Sequencer sequencer = MidiSystem.getSequencer(false);
+			sequencer.open();
+			try {
+				final CountDownLatch done = new CountDownLatch(1);
+				sequencer.addMetaEventListener(new MetaEventListener() {
+					public void meta(MetaMessage message) {
+						if (message.getType() == END_OF_TRACK) {
+							done.countDown();
+						}
+					}
+				});
+				sequencer.setSequence(MidiSystem.getSequence(file));
+				sequencer.getTransmitter().setReceiver(synth);
+				sequencer.start();
+				done.await();
+				Thread.sleep((long) (1000 * synth.getEnvelope().release)
+						+ TAIL_IN_MILLIS);
+			} finally {
+				sequencer.close();
+			}
+		} catch (MidiUnavailableException e) {
+			throw new IOException("midi sequencer unavailable", e);
+		} catch (InvalidMidiDataException e) {
+			throw new IOException("invalid midi file", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	static final int BUFFER_SIZE = 1024;
+	static final int END_OF_TRACK = 0x2f;
+	static final long TAIL_IN_MILLIS = 100;
+
+	static class MidiParser {
+
+		public MidiParser(WaveformSynthesizer synth) {
+			this.synth = synth;
+		}
+
+		final WaveformSynthesizer synth;
+		int status, data1, expected, received;
+
+		void reset() {
+			status = 0;
+			received = 0;
+		}
+
+		void parse(byte[] buffer, int offset, int length) {
+			long now = System.nanoTime();
+			for (int i = offset; i < offset + length; ++i) {
+				int b = buffer[i] & 0xff;
+				if (b >= 0xf8) {
+					continue;
+				} else if (b >= 0xf0) {
+					reset();
+				} else if (b >= 0x80) {
+					status = b;
+					received = 0;
+					int command = b & 0xf0;
+					expected = command == 0xc0 || command == 0xd0 ? 1 : 2;
+				} else if (status != 0) {
+					if (received == 0 && expected == 2) {
+						data1 = b;
+						received = 1;
+					} else {
+						int message = received == 0 ? MidiEventQueue.pack(
+								status, b, 0) : MidiEventQueue.pack(status,
+								data1, b);
+						received = 0;
+						synth.enqueue(message, now);
+					}
+				}
+			}
+		}
+
+	}
+
+	static Properties parseArguments(String[] args) throws IOException {
+		Properties arguments = new Properties();
+		for (String arg : args) {
+			if (!arg.startsWith("--")) {
+				throw new IllegalArgumentException("unexpected argument: "
+						+ arg);
+			}
+			int equals = arg.indexOf('=');
+			if (equals < 0) {
+				arguments.setProperty(arg.substring(2), "true");
+			} else {
+				arguments.setProperty(arg.substring(2, equals),
+						arg.substring(equals + 1));
+			}
+		}
+		Properties options = new Properties();
+		if (arguments.getProperty("config") != null) {
+			InputStream in = new FileInputStream(
+					arguments.getProperty("config"));
+			try {
+				options.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		options.putAll(arguments);
+		return options;
+	}
+
+	static final String USAGE = "usage: synthesketch.SynthesketchServer"
+			+ " [--config=file] [--mixer=name] [--rate=44100] [--bits=16]"
+			+ " [--channels=1] [--signed=true] [--big-endian=false]"
+			+ " [--voices=8] [--buffer=0.05] [--threads=1]"
+			+ " [--multitimbral] [--patch=file | --waveform=name]"
+			+ " [--tcp=port] [--udp=port] [--pipe=path] [--midi=file]";
+
+	public static void main(String[] args) {
+		final SynthesketchServer server;
+		try {
+			server = new SynthesketchServer(parseArguments(args));
+		} catch (Exception e) {
+			System.err.println("error: " + e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+			return;
+		}
+		try {
+			server.synth.getMetrics().register();
+		} catch (JMException e) {
+			System.err.println("error: " + e.getMessage());
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				server.synth.close();
+			}
+		});
+		try {
+			server.serve();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		System.exit(0);
+	}
+
+}
@@ -0,0 +1,129 @@
+package synthesketch;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+class VoiceAllocator {
+
+	static final int IDLE = 0, CLAIMED = 1, ACTIVE = 2, RELEASING = 3;
+
+	public VoiceAllocator(int numberOfVoices) {
+		states = new AtomicIntegerArray(numberOfVoices);
+		generations = new AtomicIntegerArray(numberOfVoices);
+		notes = new int[numberOfVoices];
+		starts = new long[numberOfVoices];
+		levels = new float[numberOfVoices];
+	}
+
+	final AtomicIntegerArray states;
+	final AtomicIntegerArray generations;
+	final int[] notes;
+	final long[] starts;
+	final float[] levels;
+
+	final AtomicLong clock = new AtomicLong();
+
+	volatile VoiceStealingPolicy policy = VoiceStealingPolicy.OLDEST;
+	Metrics metrics;
+
+	int size() {
+		return notes.length;
+	}
+
+	int state(int voice) {
+		return states.get(voice);
+	}
+
+	int generation(int voice) {
+		return generations.get(voice);
+	}
+
+	int note(int voice) {
+		return notes[voice];
+	}
+
+	void setLevel(int voice, float level) {
+		levels[voice] = level;
+	}
+
+	int allocate(int note) {
+		VoiceStealingPolicy policy = this.policy;
+		if (policy == VoiceStealingPolicy.SAME_NOTE) {
+			for (int voice = 0; voice < notes.length; ++voice) {
+				int state = states.get(voice);
+				if ((state == ACTIVE || state == RELEASING)
+						&& notes[voice] == note
+						&& states.compareAndSet(voice, state, CLAIMED)) {
+					return claimed(voice, note);
+				}
+			}
+		}
+		for (int voice = 0; voice < notes.length; ++voice) {
+			if (states.compareAndSet(voice, IDLE, CLAIMED)) {
+				return claimed(voice, note);
+			}
+		}
+		if (policy == VoiceStealingPolicy.NONE) {
+			return -1;
+		}
+		for (int attempt = 0; attempt < notes.length; ++attempt) {
+			int victim = -1, victimState = IDLE;
+			for (int voice = 0; voice < notes.length; ++voice) {
+				int state = states.get(voice);
+				if (state == IDLE
+						&& states.compareAndSet(voice, IDLE, CLAIMED)) {
+					return claimed(voice, note);
+				} else if (state != CLAIMED
+						&& (victim < 0 || isBetterVictim(policy, voice,
+								state, victim, victimState))) {
+					victim = voice;
+					victimState = state;
+				}
+			}
+			if (victim >= 0
+					&& states.compareAndSet(victim, victimState, CLAIMED)) {
+				if (metrics != null) {
+					metrics.stolenNotes.incrementAndGet();
+				}
+				return claimed(victim, note);
+			}
+		}
+		return -1;
+	}
+
+	boolean isBetterVictim(VoiceStealingPolicy policy, int voice, int state,
+			int victim, int victimState) {
+		if (state != victimState) {
+			return state == RELEASING;
+		}
+		if (policy == VoiceStealingPolicy.QUIETEST
+				&& levels[voice] != levels[victim]) {
+			return levels[voice] < levels[victim];
+		}
+		return starts[voice] < starts[victim];
+	}
+
+	int claimed(int voice, int note) {
+		notes[voice] = note;
+		starts[voice] = clock.incrementAndGet();
+		return voice;
+	}
+
+	void start(int voice) {
+		generations.incrementAndGet(voice);
+		states.set(voice, ACTIVE);
+	}
+
+	void release(int note) {
+		for (int voice = 0; voice < notes.length; ++voice) {
+			if (states.get(voice) == ACTIVE && notes[voice] == note) {
+				states.compareAndSet(voice, ACTIVE, RELEASING);
+			}
+		}
+	}
+
+	void free(int voice) {
+		states.compareAndSet(voice, RELEASING, IDLE);
+	}
+
+}
@@ -0,0 +1,7 @@
+package synthesketch;
+
+public enum VoiceStealingPolicy {
+
+	NONE, OLDEST, QUIETEST, SAME_NOTE
+
+}
@@ -0,0 +1,71 @@
+package synthesketch;
+
+public abstract class Waveform {
+
+	public static final int LENGTH = Wavetable.LENGTH;
+
+	public Waveform(String name) {
+		if (name == null) {
+			throw new NullPointerException("name");
+		}
+		this.name = name;
+	}
+
+	final String name;
+	volatile float[] samples;
+	volatile Wavetable wavetable;
+
+	public String getName() {
+		return name;
+	}
+
+	protected abstract void generate(float[] table);
+
+	float[] samples() {
+		float[] samples = this.samples;
+		if (samples == null) {
+			synchronized (this) {
+				samples = this.samples;
+				if (samples == null) {
+					samples = new float[LENGTH];
+					generate(samples);
+					this.samples = samples;
+				}
+			}
+		}
+		return samples;
+	}
+
+	public float getSample(int index) {
+		return samples()[index];
+	}
+
+	public double[] getSamples() {
+		float[] samples = samples();
+		double[] waveform = new double[samples.length];
+		for (int i = 0; i < waveform.length; ++i) {
+			waveform[i] = samples[i];
+		}
+		return waveform;
+	}
+
+	Wavetable getWavetable() {
+		Wavetable wavetable = this.wavetable;
+		if (wavetable == null) {
+			synchronized (this) {
+				wavetable = this.wavetable;
+				if (wavetable == null) {
+					wavetable = Wavetable.create(getSamples());
+					this.wavetable = wavetable;
+				}
+			}
+		}
+		return wavetable;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
@@ -0,0 +1,7 @@
+package synthesketch;
+
+public interface WaveformEditListener {
+
+	void waveformEdited(WaveformPanel source, int from, int to);
+
+}
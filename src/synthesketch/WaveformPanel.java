@@ -2,16 +2,24 @@ package synthesketch;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.DisplayMode;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
 import javax.swing.JPanel;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -23,24 +31,156 @@ public class WaveformPanel extends JPanel implements MouseListener,
 		setPreferredSize(SIZE);
 		addMouseListener(this);
 		addMouseMotionListener(this);
+		refresh = new Timer(frameDelay(), new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (dirty != null) {
+					repaint(dirty);
+					dirty = null;
+				}
+				fireEdits();
+			}
+		});
+		refresh.setRepeats(false);
 	}
 
+	double[][] frames;
+	int frame;
 	double[] waveform;
 	double sampleWidth, sampleHeight;
+	int borderSamples;
+	int[] xs, ys;
+
+	BufferedImage image;
+	double imageScale;
+
+	final Timer refresh;
+	Rectangle dirty;
+
+	int lastSample = -1;
+	double lastValue;
+
+	boolean streaming;
+	int editFrom = -1, editTo;
+
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	static int frameDelay() {
+		int refreshRate = DisplayMode.REFRESH_RATE_UNKNOWN;
+		try {
+			refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+					.getDefaultScreenDevice().getDisplayMode()
+					.getRefreshRate();
+		} catch (HeadlessException e) {}
+		if (refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN) {
+			refreshRate = DEFAULT_REFRESH_RATE;
+		}
+		return Math.max(1, 1000 / refreshRate);
+	}
 
 	public void setWaveform(double[] waveform) {
+		setFrames(new double[][] { waveform });
+	}
+
+	public void setFrames(double[][] frames) {
+		if (frames.length < 1) {
+			throw new IllegalArgumentException("cannot edit < 1 frame");
+		}
+		this.frames = new double[frames.length][];
+		for (int i = 0; i < frames.length; ++i) {
+			this.frames[i] = fit(frames[i]);
+		}
+		show(0);
+	}
+
+	static double[] fit(double[] waveform) {
 		int maxLength = (SIZE.width - 2 * BORDER.width) / 2;
 		if (waveform.length > maxLength) {
-			this.waveform = Waveforms.resample(waveform, maxLength);
+			return Waveforms.resample(waveform, maxLength);
 		} else {
-			this.waveform = Arrays.copyOf(waveform, waveform.length);
+			return Arrays.copyOf(waveform, waveform.length);
 		}
+	}
+
+	public double[][] getFrames() {
+		return frames;
+	}
+
+	public int getFrameCount() {
+		return frames != null ? frames.length : 0;
+	}
+
+	public int getFrame() {
+		return frame;
+	}
+
+	public void setFrame(int frame) {
+		if (frame < 0 || frame >= getFrameCount()) {
+			throw new IllegalArgumentException("no such frame: " + frame);
+		}
+		show(frame);
+	}
+
+	public void addFrame() {
+		double[][] frames = new double[this.frames.length + 1][];
+		System.arraycopy(this.frames, 0, frames, 0, frame + 1);
+		frames[frame + 1] = Arrays.copyOf(waveform, waveform.length);
+		System.arraycopy(this.frames, frame + 1, frames, frame + 2,
+				this.frames.length - frame - 1);
+		this.frames = frames;
+		show(frame + 1);
+	}
+
+	public void removeFrame() {
+		if (frames.length > 1) {
+			double[][] frames = new double[this.frames.length - 1][];
+			System.arraycopy(this.frames, 0, frames, 0, frame);
+			System.arraycopy(this.frames, frame + 1, frames, frame,
+					frames.length - frame);
+			this.frames = frames;
+			show(Math.min(frame, frames.length - 1));
+		}
+	}
+
+	void show(int frame) {
+		this.frame = frame;
+		waveform = frames[frame];
 		sampleWidth = (double) (SIZE.width - 2 * BORDER.width)
-				/ this.waveform.length;
+				/ waveform.length;
 		sampleHeight = SIZE.height - 2 * BORDER.height;
+		borderSamples = (int) (Math.ceil(BORDER.width / sampleWidth));
+		xs = new int[waveform.length + 2 * borderSamples + 1];
+		for (int i = 0; i < xs.length; ++i) {
+			xs[i] = BORDER.width + (int) ((i - borderSamples) * sampleWidth);
+		}
+		ys = new int[waveform.length];
+		for (int i = 0; i < ys.length; ++i) {
+			ys[i] = y(waveform[i]);
+		}
+		image = null;
+		lastSample = -1;
+		editFrom = -1;
 		repaint();
 	}
 
+	int x(int i) {
+		return xs[i + borderSamples];
+	}
+
+	int y(double sample) {
+		return BORDER.height
+				+ (int) (sampleHeight / 2 - sample * sampleHeight / 2);
+	}
+
+	int y(int i) {
+		return ys[(i % ys.length + ys.length) % ys.length];
+	}
+
 	public double[] getWaveform() {
 		return waveform;
 	}
@@ -55,10 +195,18 @@ public class WaveformPanel extends JPanel implements MouseListener,
 	public void mouseExited(MouseEvent e) {}
 
 	@Override
-	public void mousePressed(MouseEvent e) {}
+	public void mousePressed(MouseEvent e) {
+		lastSample = -1;
+	}
 
 	@Override
 	public void mouseReleased(MouseEvent e) {
+		refresh.stop();
+		if (dirty != null) {
+			repaint(dirty);
+			dirty = null;
+		}
+		fireEdits();
 		for (ChangeListener l : listeners) {
 			l.stateChanged(new ChangeEvent(this));
 		}
@@ -70,12 +218,91 @@ public class WaveformPanel extends JPanel implements MouseListener,
 				&& e.getX() < SIZE.width - BORDER.width
 				&& BORDER.height <= e.getY()
 				&& e.getY() < SIZE.height - BORDER.height) {
-			int start = (int) ((e.getX() - BORDER.width) / sampleWidth);
-			for (int i = start; i < start + 1 / sampleWidth; ++i) {
-				waveform[i] = -((e.getY() - BORDER.height) - sampleHeight / 2)
-						/ (0.5 * sampleHeight);
+			int sample = (int) ((e.getX() - BORDER.width) / sampleWidth);
+			double value = -((e.getY() - BORDER.height) - sampleHeight / 2)
+					/ (0.5 * sampleHeight);
+			int first = sample, last = sample;
+			if (lastSample >= 0 && lastSample != sample) {
+				first = Math.min(lastSample, sample);
+				last = Math.max(lastSample, sample);
+				for (int i = first; i <= last; ++i) {
+					waveform[i] = Waveforms.interpolate(lastValue, value,
+							(double) (i - lastSample) / (sample - lastSample));
+					ys[i] = y(waveform[i]);
+				}
+			} else {
+				waveform[sample] = value;
+				ys[sample] = y(value);
 			}
-			repaint();
+			lastSample = sample;
+			lastValue = value;
+			update(first, last);
+			if (streaming) {
+				if (editFrom < 0) {
+					editFrom = first;
+					editTo = last;
+				} else {
+					editFrom = Math.min(editFrom, first);
+					editTo = Math.max(editTo, last);
+				}
+			}
+		} else {
+			lastSample = -1;
+		}
+	}
+
+	void fireEdits() {
+		if (editFrom >= 0) {
+			int from = editFrom, to = editTo;
+			editFrom = -1;
+			for (WaveformEditListener l : editListeners) {
+				l.waveformEdited(this, from, to);
+			}
+		}
+	}
+
+	void update(int first, int last) {
+		int length = waveform.length;
+		for (int shift = -length; shift <= length; shift += length) {
+			int from = Math.max(first - 1 + shift, -borderSamples);
+			int to = Math.min(last + 1 + shift, waveform.length
+					+ borderSamples);
+			if (from < to) {
+				if (image != null) {
+					drawSegments(from, to);
+				}
+				Rectangle region = new Rectangle(x(from), 0, x(to) - x(from)
+						+ 1, SIZE.height);
+				if (dirty == null) {
+					dirty = region;
+					refresh.restart();
+				} else {
+					dirty.add(region);
+				}
+			}
+		}
+	}
+
+	void drawSegments(int from, int to) {
+		Graphics2D g = image.createGraphics();
+		g.scale(imageScale, imageScale);
+		g.setBackground(Color.BLACK);
+		g.clearRect(x(from), 0, x(to) - x(from) + 1, SIZE.height);
+		g.setColor(Color.WHITE);
+		for (int i = Math.max(from - 1, -borderSamples); i < Math.min(to + 1,
+				waveform.length + borderSamples); ++i) {
+			g.drawLine(x(i), y(i), x(i + 1), y(i + 1));
+		}
+		g.dispose();
+	}
+
+	void createImage(double scale) {
+		imageScale = scale;
+		image = new BufferedImage((int) Math.ceil(SIZE.width * scale),
+				(int) Math.ceil(SIZE.height * scale),
+				BufferedImage.TYPE_INT_RGB);
+		if (waveform != null) {
+			drawSegments(-borderSamples, waveform.length + borderSamples);
 		}
 	}
 
@@ -84,27 +311,16 @@ public class WaveformPanel extends JPanel implements MouseListener,
 
 	static final Dimension SIZE = new Dimension(600, 400);
 	static final Dimension BORDER = new Dimension(100, 25);
+	static final int DEFAULT_REFRESH_RATE = 60;
 
 	@Override
 	public void paint(Graphics g) {
-		((Graphics2D) g).setBackground(Color.BLACK);
-		g.clearRect(0, 0, SIZE.width, SIZE.height);
+		double scale = ((Graphics2D) g).getTransform().getScaleX();
+		if (image == null || scale != imageScale) {
+			createImage(scale);
+		}
+		g.drawImage(image, 0, 0, SIZE.width, SIZE.height, null);
 		if (waveform != null) {
-			int borderSamples = (int) (Math.ceil(BORDER.width / sampleWidth));
-			g.setColor(Color.WHITE);
-			for (int i = -borderSamples; i < waveform.length + borderSamples; ++i) {
-				int x1 = BORDER.width + (int) (i * sampleWidth);
-				int y1 = BORDER.height
-						+ (int) (sampleHeight / 2 - waveform[(i + waveform.length)
-								% waveform.length]
-								* sampleHeight / 2);
-				int x2 = BORDER.width + (int) ((i + 1) * sampleWidth);
-				int y2 = BORDER.height
-						+ (int) (sampleHeight / 2 - waveform[(i + 1 + waveform.length)
-								% waveform.length]
-								* sampleHeight / 2);
-				g.drawLine(x1, y1, x2, y2);
-			}
 			g.setColor(Color.BLUE);
 			g.drawLine(BORDER.width, SIZE.height / 2 - SIZE.height / 10,
 					BORDER.width, SIZE.height / 2 + SIZE.height / 10);
@@ -113,6 +329,10 @@ public class WaveformPanel extends JPanel implements MouseListener,
 					+ SIZE.height / 10);
 			g.setColor(Color.WHITE);
 			g.drawString("Drag mouse to edit waveform.", 10, 20);
+			if (frames.length > 1) {
+				g.drawString("Frame " + (frame + 1) + " of " + frames.length,
+						10, 40);
+			}
 		}
 	}
 
@@ -130,4 +350,15 @@ public class WaveformPanel extends JPanel implements MouseListener,
 		return (ChangeListener[]) listeners.toArray();
 	}
 
+	List<WaveformEditListener> editListeners =
+			new LinkedList<WaveformEditListener>();
+
+	public void addWaveformEditListener(WaveformEditListener listener) {
+		editListeners.add(listener);
+	}
+
+	public void removeWaveformEditListener(WaveformEditListener listener) {
+		editListeners.remove(listener);
+	}
+
 }
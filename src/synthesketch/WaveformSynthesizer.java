@@ -1,34 +1,39 @@
 package synthesketch;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-import java.util.Queue;
-import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.sound.midi.MidiMessage;
 import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Transmitter;
+import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioFormat.Encoding;
+import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.Mixer;
 import javax.sound.sampled.SourceDataLine;
 
-public class WaveformSynthesizer implements Receiver {
+public class WaveformSynthesizer implements Receiver, NoteReceiver {
 
 	Mixer mixer;
 	AudioFormat format;
 	int numberOfOscillators;
+	double bufferSize;
 
 	public Mixer getMixer() {
 		return mixer;
@@ -42,37 +47,44 @@ public class WaveformSynthesizer implements Receiver {
 		return numberOfOscillators;
 	}
 
+	public double getBufferSize() {
+		return bufferSize;
+	}
+
 	public void setOutput(Mixer mixer, AudioFormat format)
 			throws IllegalArgumentException, LineUnavailableException,
 			UnsupportedAudioFormatException {
-		setOutput(mixer, format, 8);
+		setOutput(mixer, format, DEFAULT_OSCILLATORS);
 	}
 
 	public void setOutput(Mixer mixer, AudioFormat format,
 			int numberOfOscillators) throws IllegalArgumentException,
 			LineUnavailableException, UnsupportedAudioFormatException {
+		setOutput(mixer, format, numberOfOscillators,
+				DEFAULT_BUFFER_IN_SECONDS);
+	}
+
+	public void setOutput(Mixer mixer, AudioFormat format,
+			int numberOfOscillators, double bufferSize)
+			throws IllegalArgumentException, LineUnavailableException,
+			UnsupportedAudioFormatException {
 		clearOutput();
 		if (mixer == null || format == null) {
 			throw new NullPointerException();
 		}
 		this.mixer = mixer;
-		if (format.getEncoding() != Encoding.PCM_SIGNED
-				&& format.getEncoding() != Encoding.PCM_UNSIGNED) {
-			throw new UnsupportedAudioFormatException(
-					"only PCM encoding is currently supported");
-		}
-		if (format.getSampleSizeInBits() != 8
-				&& format.getSampleSizeInBits() != 16
-				&& format.getSampleSizeInBits() != 32) {
-			throw new UnsupportedAudioFormatException(
-					"only 1, 2, and 4 byte samples are currently supported");
-		}
+		checkAudioFormat(format);
 		this.format = format;
 		if (numberOfOscillators < 1) {
 			throw new IllegalArgumentException(
 					"cannot create synthesizer with < 1 oscillator");
 		}
 		this.numberOfOscillators = numberOfOscillators;
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException(
+					"cannot create synthesizer with an empty buffer");
+		}
+		this.bufferSize = bufferSize;
 		try {
 			createOscillators();
 		} catch (IllegalArgumentException e) {
@@ -82,97 +94,650 @@ public class WaveformSynthesizer implements Receiver {
 		} catch (LineUnavailableException e) {
 			clearOutput();
 			throw new LineUnavailableException(
-					"mixer cannot support the required number of data lines");
+					"mixer cannot provide a data line");
 		}
-		if (waveform != null) {
-			createSamples();
+	}
+
+	static void checkAudioFormat(AudioFormat format)
+			throws UnsupportedAudioFormatException {
+		if (format.getEncoding() != Encoding.PCM_SIGNED
+				&& format.getEncoding() != Encoding.PCM_UNSIGNED) {
+			throw new UnsupportedAudioFormatException(
+					"only PCM encoding is currently supported");
+		}
+		if (format.getSampleSizeInBits() != 8
+				&& format.getSampleSizeInBits() != 16
+				&& format.getSampleSizeInBits() != 32) {
+			throw new UnsupportedAudioFormatException(
+					"only 1, 2, and 4 byte samples are currently supported");
 		}
 	}
 
 	public void clearOutput() {
 		mixer = null;
 		format = null;
-		if (oscillators != null) {
-			for (Oscillator o : oscillators) {
-				o.active = false;
-				o.line.close();
-			}
-			oscillators = null;
-			activeOscillators = null;
-			idleOscillators = null;
+		if (renderer != null) {
+			renderer.running = false;
+			renderer = null;
 		}
 		if (threads != null) {
 			threads.shutdown();
+			try {
+				threads.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 			threads = null;
 		}
+		if (line != null) {
+			line.close();
+			line = null;
+		}
+		oscillators = null;
+		voices = null;
+		events = null;
 	}
 
-	List<Oscillator> oscillators;
-	Map<Integer, Oscillator> activeOscillators;
-	Queue<Oscillator> idleOscillators;
+	SourceDataLine line;
+
+	Oscillator[] oscillators;
+	VoiceAllocator voices;
+	MidiEventQueue events;
 
+	Renderer renderer;
 	ExecutorService threads;
 
 	void createOscillators() throws IllegalArgumentException,
 			LineUnavailableException {
-		oscillators = new LinkedList<WaveformSynthesizer.Oscillator>();
-		activeOscillators = new TreeMap<Integer, Oscillator>();
-		idleOscillators = new LinkedList<Oscillator>();
-		threads = Executors.newCachedThreadPool();
+		line = AudioSystem.getSourceDataLine(format, mixer.getMixerInfo());
+		int bufferInFrames = Math.max(2 * BLOCK_IN_FRAMES,
+				(int) (bufferSize * format.getFrameRate()));
+		line.open(format, bufferInFrames * format.getFrameSize());
+		createVoices();
+		renderer = new Renderer(line, format);
+		threads = Executors.newSingleThreadExecutor();
+		threads.execute(renderer);
+	}
+
+	void createVoices() {
+		oscillators = new Oscillator[numberOfOscillators];
 		for (int i = 0; i < numberOfOscillators; ++i) {
-			SourceDataLine line = AudioSystem.getSourceDataLine(format,
-					mixer.getMixerInfo());
-			int bufferSize = (int) (MAX_SAMPLE_IN_SECONDS
-					* format.getFrameRate() * format.getFrameSize());
-			line.open(format, bufferSize);
-			Oscillator oscillator = new Oscillator(line);
-			oscillators.add(oscillator);
-			idleOscillators.add(oscillator);
+			oscillators[i] = new Oscillator();
+		}
+		voices = new VoiceAllocator(numberOfOscillators);
+		voices.policy = voiceStealingPolicy;
+		voices.metrics = metrics;
+		events = new MidiEventQueue(EVENT_QUEUE_CAPACITY);
+	}
 
+	class Oscillator {
+
+		double startIncrement, startTargetIncrement, startGlideStep;
+		int startGlideFrames, startChannel;
+		float startVelocity, startMorphOffset;
+
+		int generation, channel;
+		double phase;
+		double increment, targetIncrement, glideStep;
+		int glideFrames;
+		float velocity, level;
+		boolean attacking;
+		float morphOffset, morph;
+		double lfoPhase;
+
+		void start() {
+			channel = startChannel;
+			phase = 0;
+			level = 0;
+			attacking = true;
+			velocity = startVelocity;
+			increment = startIncrement;
+			targetIncrement = startTargetIncrement;
+			glideStep = startGlideStep;
+			glideFrames = startGlideFrames;
+			morphOffset = startMorphOffset;
+			morph = Float.NaN;
+			lfoPhase = 0;
 		}
+
+		boolean render(Timbre timbre, int mipmap, double bend,
+				boolean releasing, Renderer renderer, float[] mix,
+				float[] voice, float[] morphVoice, int offset, int frames) {
+			if (glideFrames > 0) {
+				int glide = Math.min(frames, glideFrames);
+				glideFrames -= glide;
+				increment = glideFrames == 0 ? targetIncrement : increment
+						* Math.pow(glideStep, glide);
+			}
+			float gain = level * velocity;
+			if (releasing) {
+				level = Math.max(0, level - timbre.releaseStep * frames);
+			} else if (attacking) {
+				level += timbre.attackStep * frames;
+				if (level >= 1) {
+					level = 1;
+					attacking = false;
+				}
+			} else {
+				level = Math.max(timbre.sustain, level - timbre.decayStep
+						* frames);
+			}
+			float gainStep = (level * velocity - gain) / frames;
+			if (increment * bend < NYQUIST_INCREMENT) {
+				if (timbre.frames != null) {
+					readFrames(timbre.frames, mipmap, increment * bend,
+							renderer, voice, morphVoice, offset, frames);
+				} else {
+					phase = timbre.wavetable.read(mipmap, phase, increment
+							* bend, voice, offset, frames);
+				}
+				renderer.kernel.mixVoice(mix, voice, offset, frames, gain,
+						gainStep);
+			}
+			return level > 0 || !releasing;
+		}
+
+		void readFrames(Wavetable[] tables, int mipmap, double increment,
+				Renderer renderer, float[] voice, float[] morphVoice,
+				int offset, int frames) {
+			lfoPhase += renderer.blockMorphLfoStep * frames;
+			lfoPhase -= Math.floor(lfoPhase);
+			float target = (float) Math.min(1, Math.max(0, renderer.blockMorph
+					+ morphOffset + renderer.blockMorphLfoDepth
+					* Math.sin(2 * Math.PI * lfoPhase)));
+			if (Float.isNaN(morph)) {
+				morph = target;
+			}
+			int last = tables.length - 1;
+			float position = morph * last;
+			float step = (target - morph) * last / frames;
+			morph = target;
+			int frame = Math.min((int) (position + step * frames / 2),
+					last - 1);
+			double start = phase;
+			tables[frame].read(mipmap, start, increment, voice, offset, frames);
+			phase = tables[frame + 1].read(mipmap, start, increment,
+					morphVoice, offset, frames);
+			position -= frame;
+			for (int i = offset; i < offset + frames; ++i) {
+				float amount = Math.min(1, Math.max(0, position));
+				voice[i] += amount * (morphVoice[i] - voice[i]);
+				position += step;
+			}
+		}
+
+	}
+
+	static class Timbre {
+
+		Wavetable wavetable;
+		Wavetable[] frames;
+		Envelope envelope;
+		float attackStep, decayStep, sustain, releaseStep;
+
+		void update(Wavetable wavetable, Wavetable[] frames,
+				Envelope envelope, double frameInSeconds) {
+			this.wavetable = wavetable;
+			this.frames = frames;
+			if (envelope != this.envelope) {
+				this.envelope = envelope;
+				attackStep = Envelope.step(envelope.attack, frameInSeconds);
+				decayStep = Envelope.step(envelope.decay, frameInSeconds)
+						* (float) (1 - envelope.sustain);
+				sustain = (float) envelope.sustain;
+				releaseStep = Envelope.step(envelope.release, frameInSeconds);
+			}
+		}
+
 	}
 
-	class Oscillator implements Runnable {
+	static final int BLOCK_IN_FRAMES = 256;
+	static final double NYQUIST_INCREMENT = Wavetable.LENGTH / 2;
 
-		public Oscillator(SourceDataLine line) {
+	class Renderer implements Runnable {
+
+		public Renderer(SourceDataLine line, AudioFormat format) {
 			this.line = line;
+			this.format = format;
+			kernel = MixKernel.DEFAULT;
+			encoder = kernel.encoder(format);
+			mix = new float[BLOCK_IN_FRAMES];
+			voice = new float[BLOCK_IN_FRAMES];
+			morphVoice = new float[BLOCK_IN_FRAMES];
+			block = new byte[BLOCK_IN_FRAMES * format.getFrameSize()];
+			blockNanos = (long) (BLOCK_IN_FRAMES * 1e9 / format.getFrameRate());
+			timbres = new Timbre[CHANNELS];
+			for (int i = 0; i < CHANNELS; ++i) {
+				timbres[i] = new Timbre();
+			}
 		}
 
-		SourceDataLine line;
-		int midiCode;
-		volatile boolean active;
+		final SourceDataLine line;
+		final AudioFormat format;
+		final MixKernel kernel;
+		final PcmEncoder encoder;
+		final float[] mix, voice, morphVoice;
+		final byte[] block;
+		final long blockNanos;
+		volatile boolean running = true;
+
+		long eventTime;
+		int eventOffset;
+
+		final Timbre[] timbres;
+
+		Oscillator[] blockOscillators;
+		VoiceAllocator blockVoices;
+		double blockBend;
+		double blockMorph, blockMorphLfoStep, blockMorphLfoDepth;
+		int blockOffset, blockFrames;
+
+		ForkJoinPool pool;
+		BlockTask blockTask;
+		VoicePartition[] partitions;
 
 		@Override
 		public void run() {
-			byte[] sample = samples.get(midiCode);
+			MidiEventQueue events = WaveformSynthesizer.this.events;
+			double nanosPerFrame = 1e9 / format.getFrameRate();
+			double deadlineNanos = BLOCK_IN_FRAMES * nanosPerFrame;
+			int bufferInFrames = line.getBufferSize() / format.getFrameSize();
+			boolean started = false;
 			line.start();
-			active = true;
-			while (active) {
-				line.write(sample, 0, sample.length);
+			long blockTime = System.nanoTime();
+			while (running) {
+				long nextBlockTime = System.nanoTime();
+				eventTime = Long.MIN_VALUE;
+				render(mix, BLOCK_IN_FRAMES, events, blockTime, nextBlockTime);
+				blockTime = nextBlockTime;
+				ScopeBuffer scope = WaveformSynthesizer.this.scope;
+				if (scope != null) {
+					scope.write(mix, BLOCK_IN_FRAMES);
+				}
+				encoder.encode(mix, BLOCK_IN_FRAMES, block);
+				long rendered = System.nanoTime();
+				int queued = bufferInFrames - line.available()
+						/ format.getFrameSize();
+				if (started && queued <= 0) {
+					metrics.underrun();
+				}
+				metrics.block(rendered - nextBlockTime, deadlineNanos);
+				if (eventTime != Long.MIN_VALUE) {
+					metrics.latency(rendered - eventTime
+							+ (long) ((queued + eventOffset) * nanosPerFrame));
+				}
+				line.write(block, 0, block.length);
+				started = true;
 			}
-			line.drain();
 			line.stop();
-			idleOscillators.add(this);
+			line.flush();
+			close();
+		}
+
+		void render(float[] mix, int frames, MidiEventQueue events,
+				long blockTime, long nextBlockTime) {
+			Arrays.fill(mix, 0, frames, 0);
+			double framesPerNano = format.getFrameRate() / 1e9;
+			int position = 0;
+			while (!events.isEmpty() && events.peekTime() < nextBlockTime) {
+				long offset = (long) ((events.peekTime() - blockTime)
+						* framesPerNano);
+				if (offset > position) {
+					int end = (int) Math.min(offset, frames - 1);
+					render(mix, position, end - position);
+					position = end;
+				}
+				if (eventTime == Long.MIN_VALUE) {
+					eventTime = events.peekTime();
+					eventOffset = position;
+				}
+				apply(events.poll());
+			}
+			render(mix, position, frames - position);
+		}
+
+		void render(float[] mix, int offset, int frames) {
+			if (frames <= 0) {
+				return;
+			}
+			blockOscillators = oscillators;
+			blockVoices = voices;
+			blockBend = pitchBend;
+			blockMorph = morph;
+			blockMorphLfoStep = morphLfoRate / format.getFrameRate();
+			blockMorphLfoDepth = morphLfoDepth;
+			blockOffset = offset;
+			blockFrames = frames;
+			if (blockOscillators == null) {
+				return;
+			}
+			Wavetable wavetable = WaveformSynthesizer.this.wavetable;
+			Wavetable[] morphFrames = WaveformSynthesizer.this.frames;
+			if (morphFrames != null) {
+				wavetable = morphFrames[0];
+			}
+			Envelope envelope = WaveformSynthesizer.this.envelope;
+			double frameInSeconds = 1 / format.getFrameRate();
+			for (int i = 0; i < CHANNELS; ++i) {
+				Wavetable channelWavetable = channels[i].wavetable;
+				Envelope channelEnvelope = channels[i].envelope;
+				if (channelWavetable != null) {
+					timbres[i].update(channelWavetable, null,
+							channelEnvelope != null ? channelEnvelope
+									: envelope, frameInSeconds);
+				} else {
+					timbres[i].update(wavetable, morphFrames,
+							channelEnvelope != null ? channelEnvelope
+									: envelope, frameInSeconds);
+				}
+			}
+			int threads = Math.min(renderThreads, blockOscillators.length);
+			if (threads <= 1) {
+				renderVoices(0, 1, mix, voice, morphVoice);
+				return;
+			}
+			if (partitions == null || partitions.length != threads) {
+				createPartitions(threads);
+			}
+			partitions[0].mix = mix;
+			blockTask.reinitialize();
+			pool.invoke(blockTask);
+			for (int p = 1; p < partitions.length; ++p) {
+				kernel.sum(mix, partitions[p].mix, offset, frames);
+			}
+		}
+
+		void renderVoices(int first, int stride, float[] mix, float[] voice,
+				float[] morphVoice) {
+			Oscillator[] oscillators = blockOscillators;
+			VoiceAllocator voices = blockVoices;
+			Timbre[] timbres = this.timbres;
+			double bend = blockBend;
+			int offset = blockOffset, frames = blockFrames;
+			for (int i = first; i < oscillators.length; i += stride) {
+				int state = voices.state(i);
+				if (state == VoiceAllocator.ACTIVE
+						|| state == VoiceAllocator.RELEASING) {
+					Oscillator oscillator = oscillators[i];
+					int generation = voices.generation(i);
+					if (oscillator.generation != generation) {
+						oscillator.generation = generation;
+						oscillator.start();
+					}
+					Timbre timbre = timbres[oscillator.channel];
+					if (timbre.wavetable == null) {
+						continue;
+					}
+					int mipmap = Wavetable.level(oscillator.increment * bend);
+					if (oscillator.render(timbre, mipmap, bend,
+							state == VoiceAllocator.RELEASING, this, mix,
+							voice, morphVoice, offset, frames)) {
+						voices.setLevel(i, oscillator.level
+								* oscillator.velocity);
+					} else {
+						voices.free(i);
+					}
+				}
+			}
+		}
+
+		void createPartitions(int threads) {
+			close();
+			pool = new ForkJoinPool(threads);
+			partitions = new VoicePartition[threads];
+			for (int p = 0; p < threads; ++p) {
+				partitions[p] = new VoicePartition(p, threads);
+			}
+			blockTask = new BlockTask();
+		}
+
+		void close() {
+			if (pool != null) {
+				pool.shutdown();
+				pool = null;
+				partitions = null;
+				blockTask = null;
+			}
 		}
 
+		@SuppressWarnings("serial")
+		class BlockTask extends RecursiveAction {
+
+			@Override
+			protected void compute() {
+				for (VoicePartition partition : partitions) {
+					partition.reinitialize();
+				}
+				invokeAll(partitions);
+			}
+
+		}
+
+		@SuppressWarnings("serial")
+		class VoicePartition extends RecursiveAction {
+
+			public VoicePartition(int first, int stride) {
+				this.first = first;
+				this.stride = stride;
+				mix = new float[BLOCK_IN_FRAMES];
+				voice = new float[BLOCK_IN_FRAMES];
+				morphVoice = new float[BLOCK_IN_FRAMES];
+			}
+
+			final int first, stride;
+			float[] mix;
+			final float[] voice, morphVoice;
+
+			@Override
+			protected void compute() {
+				if (first > 0) {
+					Arrays.fill(mix, blockOffset, blockOffset + blockFrames, 0);
+				}
+				renderVoices(first, stride, mix, voice, morphVoice);
+			}
+
+		}
+
+	}
+
+	volatile ScopeBuffer scope;
+
+	volatile int renderThreads = 1;
+
+	public int getRenderThreads() {
+		return renderThreads;
+	}
+
+	public void setRenderThreads(int renderThreads) {
+		if (renderThreads < 1) {
+			throw new IllegalArgumentException(
+					"cannot render with < 1 thread");
+		}
+		this.renderThreads = renderThreads;
 	}
 
 	public void noteOn(int midiCode) {
-		if (activeOscillators != null
-				&& !activeOscillators.containsKey(midiCode)
-				&& idleOscillators != null && !idleOscillators.isEmpty()) {
-			Oscillator oscillator = idleOscillators.remove();
-			oscillator.midiCode = midiCode;
-			threads.execute(oscillator);
-			activeOscillators.put(midiCode, oscillator);
+		noteOn(midiCode, DEFAULT_VELOCITY);
+	}
+
+	public void noteOn(int midiCode, int velocity) {
+		noteOn(midiCode, velocity, System.nanoTime());
+	}
+
+	@Override
+	public void noteOn(int midiCode, int velocity, long nanoTime) {
+		checkMidiCode(midiCode);
+		if (velocity < 0 || velocity > 127) {
+			throw new IllegalArgumentException("velocity out of range: "
+					+ velocity);
 		}
+		enqueue(MidiEventQueue.pack(ShortMessage.NOTE_ON, midiCode, velocity),
+				nanoTime);
 	}
 
 	public void noteOff(int midiCode) {
-		if (activeOscillators != null
-				&& activeOscillators.containsKey(midiCode)) {
-			Oscillator oscillator = activeOscillators.remove(midiCode);
-			oscillator.active = false;
+		noteOff(midiCode, System.nanoTime());
+	}
+
+	@Override
+	public void noteOff(int midiCode, long nanoTime) {
+		checkMidiCode(midiCode);
+		enqueue(MidiEventQueue.pack(ShortMessage.NOTE_OFF, midiCode, 0),
+				nanoTime);
+	}
+
+	static void checkMidiCode(int midiCode) {
+		if (midiCode < 0 || midiCode > 127) {
+			throw new IllegalArgumentException("midi code out of range: "
+					+ midiCode);
+		}
+	}
+
+	void enqueue(int message, long time) {
+		MidiEventQueue events = this.events;
+		Renderer renderer = this.renderer;
+		if (events == null) {
+			return;
+		}
+		if (renderer != null) {
+			time = Math.min(time, System.nanoTime() + renderer.blockNanos);
+		}
+		if (!events.offer(message, time)) {
+			metrics.droppedEvents.incrementAndGet();
+		}
+	}
+
+	void apply(int message) {
+		int command = message >> 16 & 0xf0;
+		int channel = message >> 16 & 0x0f;
+		int data1 = message >> 8 & 0x7f, data2 = message & 0x7f;
+		if (command == ShortMessage.NOTE_OFF
+				|| (command == ShortMessage.NOTE_ON && data2 == 0)) {
+			stopNote(channel, data1);
+		} else if (command == ShortMessage.NOTE_ON) {
+			startNote(channel, data1, data2);
+		} else if (command == ShortMessage.PITCH_BEND) {
+			int bend = (data2 << 7 | data1) - 8192;
+			setPitchBend(PITCH_BEND_RANGE * bend / 8192);
+		} else if (command == ShortMessage.CONTROL_CHANGE
+				&& data1 == morphController) {
+			morph = data2 / 127.0;
+		}
+	}
+
+	void startNote(int channel, int midiCode, int velocity) {
+		Renderer renderer = this.renderer;
+		VoiceAllocator voices = this.voices;
+		if (renderer == null || voices == null) {
+			return;
+		}
+		int voice = voices.allocate(channel << 7 | midiCode);
+		if (voice < 0) {
+			metrics.droppedNotes.incrementAndGet();
+			return;
+		}
+		Oscillator oscillator = oscillators[voice];
+		double increment = increment(midiCode, renderer.format);
+		double lastIncrement = this.lastIncrement;
+		oscillator.startTargetIncrement = increment;
+		if (portamento > 0 && lastIncrement > 0) {
+			oscillator.startGlideFrames = Math.max(1, (int) Math
+					.round(portamento * renderer.format.getFrameRate()));
+			oscillator.startGlideStep = Math.pow(increment / lastIncrement,
+					1.0 / oscillator.startGlideFrames);
+			oscillator.startIncrement = lastIncrement;
+		} else {
+			oscillator.startGlideFrames = 0;
+			oscillator.startIncrement = increment;
+		}
+		this.lastIncrement = increment;
+		oscillator.startVelocity = (float) velocity / 127;
+		oscillator.startMorphOffset = (float) (morphVelocity * velocity / 127);
+		oscillator.startChannel = multitimbral ? channel : 0;
+		voices.start(voice);
+	}
+
+	void stopNote(int channel, int midiCode) {
+		VoiceAllocator voices = this.voices;
+		if (voices != null) {
+			voices.release(channel << 7 | midiCode);
+		}
+	}
+
+	static final int CHANNELS = 16;
+
+	class Channel {
+
+		double[] waveform;
+		volatile Wavetable wavetable;
+		volatile Envelope envelope;
+		Future<?> build;
+
+	}
+
+	final Channel[] channels = createChannels();
+
+	Channel[] createChannels() {
+		Channel[] channels = new Channel[CHANNELS];
+		for (int i = 0; i < CHANNELS; ++i) {
+			channels[i] = new Channel();
+		}
+		return channels;
+	}
+
+	Channel channel(int channel) {
+		if (channel < 0 || channel >= CHANNELS) {
+			throw new IllegalArgumentException("no such midi channel: "
+					+ channel);
+		}
+		return channels[channel];
+	}
+
+	volatile boolean multitimbral;
+
+	public boolean isMultitimbral() {
+		return multitimbral;
+	}
+
+	public void setMultitimbral(boolean multitimbral) {
+		this.multitimbral = multitimbral;
+	}
+
+	volatile Envelope envelope = Envelope.DEFAULT;
+
+	public Envelope getEnvelope() {
+		return envelope;
+	}
+
+	public void setEnvelope(Envelope envelope) {
+		if (envelope == null) {
+			throw new NullPointerException();
+		}
+		this.envelope = envelope;
+	}
+
+	public Envelope getEnvelope(int channel) {
+		Envelope envelope = channel(channel).envelope;
+		return envelope != null ? envelope : this.envelope;
+	}
+
+	public void setEnvelope(int channel, Envelope envelope) {
+		channel(channel).envelope = envelope;
+	}
+
+	VoiceStealingPolicy voiceStealingPolicy = VoiceStealingPolicy.OLDEST;
+
+	public VoiceStealingPolicy getVoiceStealingPolicy() {
+		return voiceStealingPolicy;
+	}
+
+	public void setVoiceStealingPolicy(VoiceStealingPolicy policy) {
+		if (policy == null) {
+			throw new NullPointerException();
+		}
+		voiceStealingPolicy = policy;
+		if (voices != null) {
+			voices.policy = policy;
 		}
 	}
 
@@ -186,106 +751,499 @@ public class WaveformSynthesizer implements Receiver {
 		}
 	}
 
-	public void setWaveform(double[] waveform) {
+	public synchronized void setWaveform(double[] waveform) {
+		if (build != null) {
+			build.cancel(true);
+			build = null;
+		}
+		editor = null;
+		clearFrames();
 		if (waveform == null) {
 			this.waveform = null;
-			this.samples = null;
+			this.wavetable = null;
 		} else {
 			this.waveform = Arrays.copyOf(waveform, waveform.length);
-			if (format != null) {
-				createSamples();
+			build = submit(new WavetableBuilder(null, this.waveform, null));
+		}
+	}
+
+	public synchronized void setWaveform(Waveform waveform) {
+		if (build != null) {
+			build.cancel(true);
+			build = null;
+		}
+		editor = null;
+		clearFrames();
+		this.waveform = waveform.getSamples();
+		if (waveform.wavetable != null) {
+			this.wavetable = waveform.wavetable;
+		} else {
+			build = submit(new WavetableBuilder(null, this.waveform, waveform));
+		}
+	}
+
+	Future<?> submit(Runnable task) {
+		if (builder == null) {
+			builder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "wavetable builder");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+		}
+		return builder.submit(task);
+	}
+
+	public synchronized void setPatch(Patch patch) {
+		if (build != null) {
+			build.cancel(true);
+			build = null;
+		}
+		editor = null;
+		clearFrames();
+		waveform = patch.getWaveform();
+		wavetable = patch.wavetable;
+		envelope = patch.envelope;
+	}
+
+	Wavetable.Editor editor;
+
+	public synchronized void editWaveform(double[] waveform, int from, int to) {
+		if (from < 0 || to >= waveform.length || from > to) {
+			throw new IllegalArgumentException("invalid edit range: " + from
+					+ " to " + to);
+		}
+		clearFrames();
+		if (editor != null && editor.waveform.length == waveform.length) {
+			editor.edit(waveform, from, to);
+			this.wavetable = editor.wavetable;
+			return;
+		}
+		if (build != null) {
+			build.cancel(true);
+			build = null;
+		}
+		editor = null;
+		this.waveform = Arrays.copyOf(waveform, waveform.length);
+		build = submit(new EditorBuilder(this.waveform));
+	}
+
+	class EditorBuilder implements Runnable {
+
+		public EditorBuilder(double[] waveform) {
+			this.waveform = waveform;
+		}
+
+		final double[] waveform;
+
+		@Override
+		public void run() {
+			Wavetable.Editor editor = Wavetable.Editor.create(waveform);
+			synchronized (WaveformSynthesizer.this) {
+				if (editor != null
+						&& WaveformSynthesizer.this.waveform == waveform) {
+					WaveformSynthesizer.this.editor = editor;
+					WaveformSynthesizer.this.waveform = editor.waveform;
+					wavetable = editor.wavetable;
+				}
 			}
 		}
+
 	}
 
-	static final int MIN_MIDI = 36, MAX_MIDI = 96;
-	static final double MAX_SAMPLE_IN_SECONDS = 0.05;
-	static final int VOLUME_DIVISOR = 4;
+	double[][] frameWaveforms;
+	volatile Wavetable[] frames;
+	double[][] builtFrames;
 
-	Map<Integer, byte[]> samples;
-
-	void createSamples() {
-		samples = new TreeMap<Integer, byte[]>();
-		for (int midiCode = MIN_MIDI; midiCode <= MAX_MIDI; ++midiCode) {
-			createSample(midiCode);
-		}
-	}
-
-	void createSample(int midiCode) {
-		double frameInSeconds = 1 / format.getFrameRate();
-		double periodInSecond = 1 / frequency(midiCode);
-		double periodInFrames = periodInSecond / frameInSeconds;
-		int sampleInPeriods = (int) Math.floor(MAX_SAMPLE_IN_SECONDS
-				/ periodInSecond);
-		int sampleInFrames = (int) Math.round(sampleInPeriods * periodInFrames);
-		double[] sample = Waveforms.resample(waveform, sampleInFrames,
-				periodInFrames);
-		int frameInBytes = format.getSampleSizeInBits() / 8
-				* format.getChannels();
-		ByteBuffer sampleAsBytes = ByteBuffer.allocate(sample.length
-				* frameInBytes);
-		sampleAsBytes.order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN
-				: ByteOrder.LITTLE_ENDIAN);
-		ShortBuffer sampleAsShorts = sampleAsBytes.asShortBuffer();
-		IntBuffer sampleAsInts = sampleAsBytes.asIntBuffer();
-		for (int i = 0; i < sample.length; ++i) {
-			for (int j = 0; j < format.getChannels(); ++j) {
-				if (format.getSampleSizeInBits() == 8) {
-					byte sampleAsByte = (byte) (sample[i] * Byte.MAX_VALUE / VOLUME_DIVISOR);
-					if (format.getEncoding() == Encoding.PCM_SIGNED) {
-						sampleAsBytes.put(sampleAsByte);
-					} else {
-						sampleAsBytes
-								.put((byte) (sampleAsByte + Byte.MAX_VALUE));
+	void clearFrames() {
+		frameWaveforms = null;
+		frames = null;
+		builtFrames = null;
+	}
+
+	public int getFrameCount() {
+		return frameWaveforms != null ? frameWaveforms.length : 0;
+	}
+
+	public synchronized double[][] getFrames() {
+		if (frameWaveforms == null) {
+			return null;
+		}
+		double[][] frames = new double[frameWaveforms.length][];
+		for (int i = 0; i < frames.length; ++i) {
+			frames[i] = Arrays.copyOf(frameWaveforms[i],
+					frameWaveforms[i].length);
+		}
+		return frames;
+	}
+
+	public synchronized void setFrames(double[][] frames) {
+		if (frames == null) {
+			setWaveform((double[]) null);
+			return;
+		} else if (frames.length < 2) {
+			throw new IllegalArgumentException(
+					"cannot morph between < 2 frames");
+		}
+		double[][] waveforms = new double[frames.length][];
+		for (int i = 0; i < frames.length; ++i) {
+			if (frameWaveforms != null) {
+				for (double[] waveform : frameWaveforms) {
+					if (Arrays.equals(waveform, frames[i])) {
+						waveforms[i] = waveform;
+						break;
 					}
+				}
+			}
+			if (waveforms[i] == null) {
+				waveforms[i] = Arrays.copyOf(frames[i], frames[i].length);
+			}
+		}
+		buildFrames(waveforms);
+	}
 
-				} else if (format.getSampleSizeInBits() == 16) {
-					short sampleAsShort = (short) (sample[i] * Short.MAX_VALUE / VOLUME_DIVISOR);
-					if (format.getEncoding() == Encoding.PCM_SIGNED) {
-						sampleAsShorts.put(sampleAsShort);
-					} else {
-						sampleAsShorts
-								.put((short) (sampleAsShort + Short.MAX_VALUE));
+	public synchronized void setFrame(int frame, double[] waveform) {
+		if (frameWaveforms == null || frame < 0
+				|| frame >= frameWaveforms.length) {
+			throw new IllegalArgumentException("no such frame: " + frame);
+		}
+		double[][] waveforms = frameWaveforms.clone();
+		waveforms[frame] = Arrays.copyOf(waveform, waveform.length);
+		buildFrames(waveforms);
+	}
+
+	void buildFrames(double[][] waveforms) {
+		if (build != null) {
+			build.cancel(true);
+			build = null;
+		}
+		editor = null;
+		waveform = waveforms[0];
+		frameWaveforms = waveforms;
+		build = submit(new FramesBuilder(waveforms));
+	}
+
+	class FramesBuilder implements Runnable {
+
+		public FramesBuilder(double[][] waveforms) {
+			this.waveforms = waveforms;
+		}
+
+		final double[][] waveforms;
+
+		@Override
+		public void run() {
+			Wavetable[] tables = new Wavetable[waveforms.length];
+			synchronized (WaveformSynthesizer.this) {
+				for (int i = 0; builtFrames != null
+						&& i < builtFrames.length; ++i) {
+					for (int j = 0; j < waveforms.length; ++j) {
+						if (builtFrames[i] == waveforms[j]) {
+							tables[j] = frames[i];
+						}
 					}
-				} else if (format.getSampleSizeInBits() == 32) {
-					int sampleAsInt = (int) (sample[i] * Integer.MAX_VALUE / VOLUME_DIVISOR);
-					if (format.getEncoding() == Encoding.PCM_SIGNED) {
-						sampleAsInts.put(sampleAsInt);
-					} else {
-						sampleAsInts.put(sampleAsInt + Integer.MAX_VALUE);
+				}
+			}
+			for (int i = 0; i < tables.length; ++i) {
+				if (tables[i] == null) {
+					tables[i] = Wavetable.create(waveforms[i]);
+					if (tables[i] == null) {
+						return;
+					}
+				}
+			}
+			synchronized (WaveformSynthesizer.this) {
+				if (frameWaveforms == waveforms) {
+					frames = tables;
+					builtFrames = waveforms;
+				}
+			}
+		}
+
+	}
+
+	volatile double morph;
+
+	public double getMorph() {
+		return morph;
+	}
+
+	public void setMorph(double morph) {
+		if (morph < 0 || morph > 1) {
+			throw new IllegalArgumentException("morph out of range: " + morph);
+		}
+		this.morph = morph;
+	}
+
+	volatile double morphVelocity;
+
+	public double getMorphVelocity() {
+		return morphVelocity;
+	}
+
+	public void setMorphVelocity(double amount) {
+		if (amount < -1 || amount > 1) {
+			throw new IllegalArgumentException(
+					"morph velocity amount out of range: " + amount);
+		}
+		morphVelocity = amount;
+	}
+
+	volatile double morphLfoRate, morphLfoDepth;
+
+	public double getMorphLfoRate() {
+		return morphLfoRate;
+	}
+
+	public void setMorphLfoRate(double hertz) {
+		if (hertz < 0) {
+			throw new IllegalArgumentException(
+					"morph lfo rate cannot be negative");
+		}
+		morphLfoRate = hertz;
+	}
+
+	public double getMorphLfoDepth() {
+		return morphLfoDepth;
+	}
+
+	public void setMorphLfoDepth(double depth) {
+		if (depth < 0 || depth > 1) {
+			throw new IllegalArgumentException("morph lfo depth out of range: "
+					+ depth);
+		}
+		morphLfoDepth = depth;
+	}
+
+	static final int DEFAULT_MORPH_CONTROLLER = 1;
+
+	volatile int morphController = DEFAULT_MORPH_CONTROLLER;
+
+	public int getMorphController() {
+		return morphController;
+	}
+
+	public void setMorphController(int controller) {
+		if (controller < 0 || controller > 127) {
+			throw new IllegalArgumentException(
+					"controller out of range: " + controller);
+		}
+		morphController = controller;
+	}
+
+	public double[] getWaveform(int channel) {
+		double[] waveform = channel(channel).waveform;
+		if (waveform == null) {
+			return getWaveform();
+		} else {
+			return Arrays.copyOf(waveform, waveform.length);
+		}
+	}
+
+	public synchronized void setWaveform(int channel, double[] waveform) {
+		Channel slot = channel(channel);
+		if (slot.build != null) {
+			slot.build.cancel(true);
+			slot.build = null;
+		}
+		if (waveform == null) {
+			slot.waveform = null;
+			slot.wavetable = null;
+		} else {
+			slot.waveform = Arrays.copyOf(waveform, waveform.length);
+			slot.build = submit(new WavetableBuilder(slot, slot.waveform,
+					null));
+		}
+	}
+
+	public synchronized void setWaveform(int channel, Waveform waveform) {
+		Channel slot = channel(channel);
+		if (slot.build != null) {
+			slot.build.cancel(true);
+			slot.build = null;
+		}
+		slot.waveform = waveform.getSamples();
+		if (waveform.wavetable != null) {
+			slot.wavetable = waveform.wavetable;
+		} else {
+			slot.build = submit(new WavetableBuilder(slot, slot.waveform,
+					waveform));
+		}
+	}
+
+	public synchronized void setPatch(int channel, Patch patch) {
+		Channel slot = channel(channel);
+		if (slot.build != null) {
+			slot.build.cancel(true);
+			slot.build = null;
+		}
+		slot.waveform = patch.getWaveform();
+		slot.wavetable = patch.wavetable;
+		slot.envelope = patch.envelope;
+	}
+
+	ExecutorService builder;
+	Future<?> build;
+
+	class WavetableBuilder implements Runnable {
+
+		public WavetableBuilder(Channel channel, double[] waveform,
+				Waveform source) {
+			this.channel = channel;
+			this.waveform = waveform;
+			this.source = source;
+		}
+
+		final Channel channel;
+		final double[] waveform;
+		final Waveform source;
+
+		@Override
+		public void run() {
+			Wavetable table = source != null ? source.getWavetable()
+					: Wavetable.create(waveform);
+			synchronized (WaveformSynthesizer.this) {
+				if (table == null) {
+					return;
+				} else if (channel != null) {
+					if (channel.waveform == waveform) {
+						channel.wavetable = table;
 					}
+				} else if (WaveformSynthesizer.this.waveform == waveform) {
+					wavetable = table;
 				}
 			}
 		}
-		samples.put(midiCode, sampleAsBytes.array());
 
 	}
 
+	static final double DEFAULT_BUFFER_IN_SECONDS = 0.05;
+	static final int DEFAULT_VELOCITY = 127;
+	static final int DEFAULT_OSCILLATORS = 8;
+	static final int EVENT_QUEUE_CAPACITY = 1024;
+	static final int VOLUME_DIVISOR = 4;
+	volatile Wavetable wavetable;
+
+	static double increment(int midiCode, AudioFormat format) {
+		return frequency(midiCode) * Wavetable.LENGTH / format.getFrameRate();
+	}
+
 	private static double frequency(int midiCode) {
 		return 440.0 * Math.pow(Math.pow(2, (double) 1 / 12), midiCode - 69);
 	}
 
+	static final double PITCH_BEND_RANGE = 2;
+
+	volatile double pitchBend = 1;
+
+	public double getPitchBend() {
+		return 12 * Math.log(pitchBend) / Math.log(2);
+	}
+
+	public void setPitchBend(double semitones) {
+		pitchBend = Math.pow(2, semitones / 12);
+	}
+
+	volatile double portamento;
+	volatile double lastIncrement;
+
+	public double getPortamento() {
+		return portamento;
+	}
+
+	public void setPortamento(double seconds) {
+		if (seconds < 0) {
+			throw new IllegalArgumentException(
+					"portamento time cannot be negative");
+		}
+		portamento = seconds;
+	}
+
+	public AudioInputStream render(double[] waveform, Sequence sequence,
+			AudioFormat format) throws UnsupportedAudioFormatException {
+		checkAudioFormat(format);
+		OfflineRenderer renderer = new OfflineRenderer(this, waveform,
+				sequence, format);
+		return new AudioInputStream(renderer, format,
+				renderer.getFrameLength());
+	}
+
+	public void render(double[] waveform, Sequence sequence,
+			AudioFormat format, OutputStream out)
+			throws UnsupportedAudioFormatException, IOException {
+		checkAudioFormat(format);
+		OfflineRenderer renderer = new OfflineRenderer(this, waveform,
+				sequence, format);
+		for (int length = renderer.renderBlock(); length >= 0; length = renderer
+				.renderBlock()) {
+			out.write(renderer.block, 0, length);
+		}
+	}
+
+	public void render(double[] waveform, Sequence sequence,
+			AudioFormat format, WritableByteChannel out)
+			throws UnsupportedAudioFormatException, IOException {
+		checkAudioFormat(format);
+		OfflineRenderer renderer = new OfflineRenderer(this, waveform,
+				sequence, format);
+		ByteBuffer buffer = ByteBuffer.wrap(renderer.block);
+		for (int length = renderer.renderBlock(); length >= 0; length = renderer
+				.renderBlock()) {
+			buffer.clear().limit(length);
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+		}
+	}
+
+	public void renderWave(double[] waveform, Sequence sequence,
+			AudioFormat format, File file)
+			throws UnsupportedAudioFormatException, IOException {
+		AudioSystem.write(render(waveform, sequence, format),
+				AudioFileFormat.Type.WAVE, file);
+	}
+
+	long deviceClockOffset = Long.MAX_VALUE;
+
 	@Override
 	public void send(MidiMessage rawMessage, long timeStamp) {
 		if (rawMessage instanceof ShortMessage) {
 			ShortMessage message = (ShortMessage) rawMessage;
-			if (message.getCommand() == ShortMessage.NOTE_OFF
-					|| (message.getCommand() == ShortMessage.NOTE_ON && message
-							.getData2() == 0)) {
-				noteOff(message.getData1());
-			} else if (message.getCommand() == ShortMessage.NOTE_ON) {
-				noteOn(message.getData1());
-
-				// TODO Handle second short message byte (velocity)
-
+			long now = System.nanoTime();
+			long time = now;
+			if (timeStamp >= 0) {
+				long offset = now - timeStamp * 1000;
+				if (deviceClockOffset == Long.MAX_VALUE
+						|| offset < deviceClockOffset) {
+					deviceClockOffset = offset;
+				}
+				time = timeStamp * 1000 + deviceClockOffset;
 			}
+			enqueue(MidiEventQueue.pack(message.getStatus(),
+					message.getData1(), message.getData2()), time);
 		}
 	}
 
+	final Metrics metrics = new Metrics(this);
+
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
 	@Override
 	public void close() {
+		metrics.unregister();
 		clearOutput();
-		setWaveform(null);
+		setWaveform((double[]) null);
+		for (int i = 0; i < CHANNELS; ++i) {
+			setWaveform(i, (double[]) null);
+		}
+		if (builder != null) {
+			builder.shutdownNow();
+			builder = null;
+		}
 	}
 
 	Transmitter transmitter;
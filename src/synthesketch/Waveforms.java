@@ -1,27 +1,95 @@
 package synthesketch;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
 public class Waveforms {
 
-	public static final double[] SINE_WAVE = new double[44100];
-	static {
-		for (int i = 0; i < SINE_WAVE.length; ++i) {
-			SINE_WAVE[i] = Math.sin(interpolate(0, 2 * Math.PI, (double) i
-					/ SINE_WAVE.length));
+	static final Map<String, Waveform> REGISTRY =
+			new LinkedHashMap<String, Waveform>();
+
+	public static final Waveform SINE = register(new Waveform("Sine") {
+		protected void generate(float[] table) {
+			for (int i = 0; i < table.length; ++i) {
+				table[i] = (float) Math.sin(2 * Math.PI * i / table.length);
+			}
 		}
-	}
+	});
+
+	public static final Waveform SQUARE = register(new Waveform("Square") {
+		protected void generate(float[] table) {
+			for (int i = 0; i < table.length; ++i) {
+				table[i] = Math.signum(i - table.length / 2);
+			}
+		}
+	});
+
+	public static final Waveform SAW = register(new Waveform("Saw") {
+		protected void generate(float[] table) {
+			for (int i = 0; i < table.length; ++i) {
+				table[i] = (float) i / table.length * 2 - 1;
+			}
+		}
+	});
+
+	public static final Waveform TRIANGLE = register(new Waveform(
+			"Triangle") {
+		protected void generate(float[] table) {
+			for (int i = 0; i < table.length; ++i) {
+				float position = (float) i / table.length;
+				table[i] = 1 - 4 * Math.abs(position - 0.5f);
+			}
+		}
+	});
+
+	public static final Waveform PULSE = register(pulse(0.25));
+
+	public static final Waveform NOISE = register(new Waveform("Noise") {
+		protected void generate(float[] table) {
+			Random random = new Random(NOISE_SEED);
+			for (int i = 0; i < table.length; ++i) {
+				table[i] = random.nextFloat() * 2 - 1;
+			}
+		}
+	});
 
-	public static final double[] SQUARE_WAVE = new double[44100];
-	static {
-		for (int i = 0; i < SQUARE_WAVE.length; ++i) {
-			SQUARE_WAVE[i] = Math.signum(i - SQUARE_WAVE.length / 2);
+	static final long NOISE_SEED = 0x5eed;
+
+	public static Waveform pulse(final double width) {
+		if (width <= 0 || width >= 1) {
+			throw new IllegalArgumentException(
+					"pulse width must be in (0, 1)");
 		}
+		return new Waveform("Pulse " + Math.round(width * 100) + "%") {
+			protected void generate(float[] table) {
+				int high = (int) Math.round(width * table.length);
+				for (int i = 0; i < table.length; ++i) {
+					table[i] = i < high ? 1 : -1;
+				}
+			}
+		};
 	}
 
-	public static final double[] SAW_WAVE = new double[44100];
-	static {
-		for (int i = 0; i < SAW_WAVE.length; ++i) {
-			SAW_WAVE[i] = (double) i / SAW_WAVE.length * 2 - 1;
+	public static synchronized Waveform register(Waveform waveform) {
+		if (REGISTRY.containsKey(waveform.getName())) {
+			throw new IllegalArgumentException("waveform "
+					+ waveform.getName() + " already registered");
 		}
+		REGISTRY.put(waveform.getName(), waveform);
+		return waveform;
+	}
+
+	public static synchronized Waveform get(String name) {
+		return REGISTRY.get(name);
+	}
+
+	public static synchronized List<Waveform> getAll() {
+		return Collections.unmodifiableList(new ArrayList<Waveform>(REGISTRY
+				.values()));
 	}
 
 	public static double[] resample(double[] waveform, int resampledLength) {
@@ -30,21 +98,20 @@ public class Waveforms {
 
 	public static double[] resample(double[] waveform, int resampledLength,
 			double resampledWaveformLength) {
-		double[] resampled = new double[resampledLength];
-		for (int i = 0; i < resampled.length; ++i) {
-			double waveformPosition = i % resampledWaveformLength
-					/ resampledWaveformLength;
-			int lowerSample = (int) Math.floor(waveformPosition
-					* waveform.length)
-					% waveform.length;
-			int upperSample = (int) Math.ceil(waveformPosition
-					* waveform.length)
-					% waveform.length;
-			resampled[i] = interpolate(waveform[lowerSample],
-					waveform[upperSample],
-					waveformPosition - Math.floor(waveformPosition));
-		}
-		return resampled;
+		return resample(waveform, resampledLength, resampledWaveformLength,
+				Interpolator.DEFAULT);
+	}
+
+	public static double[] resample(double[] waveform, int resampledLength,
+			Interpolator interpolator) {
+		return resample(waveform, resampledLength, resampledLength,
+				interpolator);
+	}
+
+	public static double[] resample(double[] waveform, int resampledLength,
+			double resampledWaveformLength, Interpolator interpolator) {
+		return interpolator.resample(waveform, resampledLength,
+				resampledWaveformLength);
 	}
 
 	public static double interpolate(double x, double y, double d) {
@@ -0,0 +1,304 @@
+package synthesketch;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+abstract class Wavetable {
+
+	static final int LENGTH = 2048;
+	static final int LEVELS = 11;
+
+	static int level(double increment) {
+		if (increment <= 1) {
+			return 0;
+		}
+		return Math.min(Math.getExponent(increment) + 1, LEVELS - 1);
+	}
+
+	abstract double read(int level, double phase, double increment,
+			float[] voice, int offset, int frames);
+
+	abstract void get(int level, float[] table);
+
+	static class HeapWavetable extends Wavetable {
+
+		HeapWavetable(float[][] levels) {
+			this.levels = levels;
+		}
+
+		final float[][] levels;
+
+		@Override
+		double read(int level, double phase, double increment,
+				float[] voice, int offset, int frames) {
+			float[] table = levels[level];
+			double length = LENGTH;
+			for (int i = offset; i < offset + frames; ++i) {
+				int index = (int) phase;
+				float lower = table[index];
+				float upper = table[(index + 1) & (LENGTH - 1)];
+				voice[i] = lower + (float) (phase - index) * (upper - lower);
+				phase += increment;
+				if (phase >= length) {
+					phase -= length;
+				}
+			}
+			return phase;
+		}
+
+		@Override
+		void get(int level, float[] table) {
+			System.arraycopy(levels[level], 0, table, 0, LENGTH);
+		}
+
+	}
+
+	static class BufferWavetable extends Wavetable {
+
+		BufferWavetable(FloatBuffer[] levels) {
+			this.levels = levels;
+		}
+
+		final FloatBuffer[] levels;
+
+		@Override
+		double read(int level, double phase, double increment,
+				float[] voice, int offset, int frames) {
+			FloatBuffer table = levels[level];
+			double length = LENGTH;
+			for (int i = offset; i < offset + frames; ++i) {
+				int index = (int) phase;
+				float lower = table.get(index);
+				float upper = table.get((index + 1) & (LENGTH - 1));
+				voice[i] = lower + (float) (phase - index) * (upper - lower);
+				phase += increment;
+				if (phase >= length) {
+					phase -= length;
+				}
+			}
+			return phase;
+		}
+
+		@Override
+		void get(int level, float[] table) {
+			levels[level].duplicate().get(table, 0, LENGTH);
+		}
+
+	}
+
+	static Wavetable create(double[] waveform) {
+		double[][] levels = bandLimit(Waveforms.resample(waveform, LENGTH));
+		if (levels == null) {
+			return null;
+		}
+		float[][] tables = new float[LEVELS][LENGTH];
+		for (int level = 0; level < LEVELS; ++level) {
+			for (int i = 0; i < LENGTH; ++i) {
+				tables[level][i] = (float) levels[level][i];
+			}
+		}
+		return new HeapWavetable(tables);
+	}
+
+	static double[][] bandLimit(double[] table) {
+		double[] re = Arrays.copyOf(table, LENGTH);
+		double[] im = new double[LENGTH];
+		fft(re, im, false);
+		double[][] levels = new double[LEVELS][];
+		for (int level = 0; level < LEVELS; ++level) {
+			if (Thread.currentThread().isInterrupted()) {
+				return null;
+			}
+			double[] levelRe = new double[LENGTH];
+			double[] levelIm = new double[LENGTH];
+			int harmonics = harmonics(level);
+			for (int i = 0; i < LENGTH; ++i) {
+				int harmonic = i <= LENGTH / 2 ? i : LENGTH - i;
+				levelRe[i] = harmonic <= harmonics ? re[i] : 0;
+				levelIm[i] = harmonic <= harmonics ? im[i] : 0;
+			}
+			fft(levelRe, levelIm, true);
+			levels[level] = levelRe;
+		}
+		return levels;
+	}
+
+	static int harmonics(int level) {
+		return (LENGTH / 2) >> level;
+	}
+
+	static class Editor {
+
+		static final int MAX_DIRECT_POINTS = 64;
+
+		static Editor create(double[] waveform) {
+			return create(waveform, Interpolator.DEFAULT);
+		}
+
+		static Editor create(double[] waveform, Interpolator interpolator) {
+			waveform = Arrays.copyOf(waveform, waveform.length);
+			double[] resampled = interpolator.resample(waveform, LENGTH,
+					LENGTH);
+			double[][] sums = bandLimit(resampled);
+			if (sums == null) {
+				return null;
+			}
+			return new Editor(waveform, interpolator, resampled, sums);
+		}
+
+		Editor(double[] waveform, Interpolator interpolator,
+				double[] resampled, double[][] sums) {
+			this.waveform = waveform;
+			this.interpolator = interpolator;
+			this.resampled = resampled;
+			this.sums = sums;
+			publish();
+		}
+
+		final double[] waveform, resampled;
+		final Interpolator interpolator;
+		final double[][] sums;
+		volatile HeapWavetable wavetable;
+
+		void publish() {
+			float[][] tables = new float[LEVELS][LENGTH];
+			for (int level = 0; level < LEVELS; ++level) {
+				double[] sum = sums[level];
+				float[] table = tables[level];
+				for (int i = 0; i < LENGTH; ++i) {
+					table[i] = (float) sum[i];
+				}
+			}
+			wavetable = new HeapWavetable(tables);
+		}
+
+		int[] range(int from, int to) {
+			int length = waveform.length;
+			long step = Interpolator.step(length, LENGTH);
+			int reach = interpolator.taps(step) / 2;
+			int first = (int) Math.floor((double) (from - reach) * LENGTH
+					/ length);
+			int last = (int) Math.ceil((double) (to + reach) * LENGTH
+					/ length);
+			if (last - first >= LENGTH) {
+				return new int[] { 0, LENGTH - 1 };
+			}
+			return new int[] { first, last };
+		}
+
+		void edit(double[] waveform, int from, int to) {
+			System.arraycopy(waveform, from, this.waveform, from, to - from
+					+ 1);
+			int[] range = range(from, to);
+			double[] values = new double[range[1] - range[0] + 1];
+			int first = range[0] & (LENGTH - 1);
+			interpolator.resample(this.waveform, Interpolator.step(
+					this.waveform.length, LENGTH), first, values);
+			double[] deltas = new double[values.length];
+			boolean changed = false;
+			for (int j = 0; j < values.length; ++j) {
+				int i = (first + j) & (LENGTH - 1);
+				deltas[j] = values[j] - resampled[i];
+				resampled[i] = values[j];
+				changed |= deltas[j] != 0;
+			}
+			if (!changed) {
+				return;
+			} else if (values.length > MAX_DIRECT_POINTS) {
+				double[] delta = new double[LENGTH];
+				for (int j = 0; j < deltas.length; ++j) {
+					delta[(first + j) & (LENGTH - 1)] = deltas[j];
+				}
+				double[][] levels = bandLimit(delta);
+				for (int level = 0; level < LEVELS; ++level) {
+					double[] sum = sums[level];
+					double[] limited = levels[level];
+					for (int k = 0; k < LENGTH; ++k) {
+						sum[k] += limited[k];
+					}
+				}
+			} else {
+				for (int j = 0; j < deltas.length; ++j) {
+					int i = (first + j) & (LENGTH - 1);
+					double delta = deltas[j];
+					if (delta == 0) {
+						continue;
+					}
+					sums[0][i] += delta;
+					for (int level = 1; level < LEVELS; ++level) {
+						double[] sum = sums[level];
+						double[] kernel = KERNELS[level];
+						for (int k = 0; k < i; ++k) {
+							sum[k] += delta * kernel[k - i + LENGTH];
+						}
+						for (int k = i; k < LENGTH; ++k) {
+							sum[k] += delta * kernel[k - i];
+						}
+					}
+				}
+			}
+			publish();
+		}
+
+		static final double[][] KERNELS = new double[LEVELS][];
+		static {
+			for (int level = 0; level < LEVELS; ++level) {
+				double[] re = new double[LENGTH];
+				double[] im = new double[LENGTH];
+				int harmonics = harmonics(level);
+				for (int i = 0; i < LENGTH; ++i) {
+					int harmonic = i <= LENGTH / 2 ? i : LENGTH - i;
+					re[i] = harmonic <= harmonics ? 1 : 0;
+				}
+				fft(re, im, true);
+				KERNELS[level] = re;
+			}
+		}
+
+	}
+
+	static void fft(double[] re, double[] im, boolean inverse) {
+		int n = re.length;
+		for (int i = 1, j = 0; i < n; ++i) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+			if (i < j) {
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+		for (int length = 2; length <= n; length <<= 1) {
+			double angle = 2 * Math.PI / length * (inverse ? 1 : -1);
+			double stepRe = Math.cos(angle), stepIm = Math.sin(angle);
+			for (int i = 0; i < n; i += length) {
+				double wRe = 1, wIm = 0;
+				for (int j = 0; j < length / 2; ++j) {
+					int a = i + j, b = i + j + length / 2;
+					double bRe = re[b] * wRe - im[b] * wIm;
+					double bIm = re[b] * wIm + im[b] * wRe;
+					re[b] = re[a] - bRe;
+					im[b] = im[a] - bIm;
+					re[a] += bRe;
+					im[a] += bIm;
+					double t = wRe * stepRe - wIm * stepIm;
+					wIm = wRe * stepIm + wIm * stepRe;
+					wRe = t;
+				}
+			}
+		}
+		if (inverse) {
+			for (int i = 0; i < n; ++i) {
+				re[i] /= n;
+				im[i] /= n;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package synthesketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+public class KeyboardPanelTest {
+
+	static class RecordingReceiver implements Receiver {
+
+		final List<MidiMessage> messages = new ArrayList<MidiMessage>();
+
+		@Override
+		public void send(MidiMessage message, long timeStamp) {
+			messages.add(message);
+		}
+
+		@Override
+		public void close() {}
+
+	}
+
+	@Test
+	public void forwardsNotesOffTheDrawnKeyboard() throws Exception {
+		KeyboardPanel panel = new KeyboardPanel();
+		RecordingReceiver receiver = new RecordingReceiver();
+		panel.setReceiver(receiver);
+		panel.send(new ShortMessage(ShortMessage.NOTE_ON, 30, 100), -1);
+		panel.send(new ShortMessage(ShortMessage.NOTE_OFF, 30, 0), -1);
+		panel.send(new ShortMessage(ShortMessage.NOTE_ON, 127, 100), -1);
+		assertEquals(3, receiver.messages.size());
+		assertEquals(30, ((ShortMessage) receiver.messages.get(0)).getData1());
+	}
+
+	@Test
+	public void highlightsNotesOnTheDrawnKeyboard() throws Exception {
+		KeyboardPanel panel = new KeyboardPanel();
+		RecordingReceiver receiver = new RecordingReceiver();
+		panel.setReceiver(receiver);
+		panel.send(new ShortMessage(ShortMessage.NOTE_ON, 60, 100), -1);
+		assertTrue(panel.keysByMidi.get(60).playing);
+		panel.send(new ShortMessage(ShortMessage.NOTE_ON, 60, 0), -1);
+		assertFalse(panel.keysByMidi.get(60).playing);
+		assertEquals(2, receiver.messages.size());
+	}
+
+}
@@ -0,0 +1,73 @@
+package synthesketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+public class MidiEventQueueTest {
+
+	static final int CAPACITY = 16;
+
+	static int noteOn(int midiCode) {
+		return MidiEventQueue.pack(ShortMessage.NOTE_ON, midiCode, 100);
+	}
+
+	static int noteOff(int midiCode) {
+		return MidiEventQueue.pack(ShortMessage.NOTE_OFF, midiCode, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsCapacitiesThatAreNotPowersOfTwo() {
+		new MidiEventQueue(12);
+	}
+
+	@Test
+	public void keepsReserveForNoteOffs() {
+		MidiEventQueue queue = new MidiEventQueue(CAPACITY);
+		int reserved = CAPACITY / MidiEventQueue.RESERVED_FRACTION;
+		for (int i = 0; i < CAPACITY - reserved; ++i) {
+			assertTrue(queue.offer(noteOn(i), i));
+		}
+		assertFalse(queue.offer(noteOn(100), 100));
+		int zeroVelocity = MidiEventQueue.pack(ShortMessage.NOTE_ON, 1, 0);
+		assertTrue(queue.offer(zeroVelocity, 101));
+		for (int i = 1; i < reserved; ++i) {
+			assertTrue(queue.offer(noteOff(i), 101 + i));
+		}
+		assertFalse(queue.offer(noteOff(0), 200));
+		queue.poll();
+		assertFalse(queue.offer(noteOn(100), 201));
+		assertTrue(queue.offer(noteOff(0), 202));
+	}
+
+	@Test
+	public void deliversEventsInOrder() {
+		MidiEventQueue queue = new MidiEventQueue(CAPACITY);
+		for (int round = 0; round < 3; ++round) {
+			for (int i = 0; i < 10; ++i) {
+				assertTrue(queue.offer(noteOn(i), 1000 * round + i));
+			}
+			for (int i = 0; i < 10; ++i) {
+				assertFalse(queue.isEmpty());
+				assertEquals(1000 * round + i, queue.peekTime());
+				assertEquals(noteOn(i), queue.poll());
+			}
+			assertTrue(queue.isEmpty());
+		}
+	}
+
+	@Test
+	public void classifiesNoteOffs() {
+		assertTrue(MidiEventQueue.isNoteOff(noteOff(60)));
+		assertTrue(MidiEventQueue.isNoteOff(MidiEventQueue.pack(
+				ShortMessage.NOTE_ON | 3, 60, 0)));
+		assertFalse(MidiEventQueue.isNoteOff(noteOn(60)));
+		assertFalse(MidiEventQueue.isNoteOff(MidiEventQueue.pack(
+				ShortMessage.CONTROL_CHANGE, 1, 0)));
+	}
+
+}
@@ -0,0 +1,65 @@
+package synthesketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.Test;
+
+public class OfflineRendererTest {
+
+	static final AudioFormat FORMAT = new AudioFormat(44100, 16, 1, true,
+			false);
+	static final int RESOLUTION = 480;
+	static final double RELEASE = 0.2;
+
+	static short[] render(WaveformSynthesizer synth) throws Exception {
+		Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+		Track track = sequence.createTrack();
+		track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 69,
+				100), 0));
+		track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 69,
+				0), RESOLUTION));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		synth.render(Waveforms.SINE.getSamples(), sequence, FORMAT, out);
+		ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray()).order(
+				ByteOrder.LITTLE_ENDIAN);
+		short[] frames = new short[buffer.remaining() / 2];
+		buffer.asShortBuffer().get(frames);
+		return frames;
+	}
+
+	static int peak(short[] frames, int from, int to) {
+		int peak = 0;
+		for (int i = from; i < to; ++i) {
+			peak = Math.max(peak, Math.abs(frames[i]));
+		}
+		return peak;
+	}
+
+	@Test
+	public void rendersNoteAndReleaseTail() throws Exception {
+		WaveformSynthesizer synth = new WaveformSynthesizer();
+		synth.setEnvelope(new Envelope(0.01, 0.05, 0.5, RELEASE));
+		short[] frames = render(synth);
+		int noteOff = (int) (FORMAT.getFrameRate() / 2);
+		int tail = (int) Math.ceil(RELEASE * FORMAT.getFrameRate());
+		assertEquals(noteOff + tail + WaveformSynthesizer.BLOCK_IN_FRAMES,
+				frames.length);
+		assertTrue(peak(frames, 1000, noteOff) > 1000);
+		assertTrue(peak(frames, noteOff + tail * 3 / 4, noteOff + tail)
+				< peak(frames, noteOff, noteOff + tail / 4));
+		assertEquals(0, peak(frames, noteOff + tail, frames.length));
+		synth.close();
+	}
+
+}
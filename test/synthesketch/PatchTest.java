@@ -0,0 +1,54 @@
+package synthesketch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class PatchTest {
+
+	static ByteBuffer header(int waveformLength, int capacity) {
+		ByteBuffer buffer = ByteBuffer.allocate(capacity).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(Patch.MAGIC).putInt(Patch.VERSION)
+				.putInt(Wavetable.LENGTH).putInt(Wavetable.LEVELS)
+				.putInt(waveformLength);
+		buffer.putFloat(0.01f).putFloat(0.1f).putFloat(0.5f).putFloat(0.2f);
+		buffer.clear();
+		return buffer;
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsLengthsThatOverflow() throws IOException {
+		new Patch(header(0x20000000, 1 << 16));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsTruncatedPatches() throws IOException {
+		new Patch(header(16, Patch.HEADER_IN_BYTES + 4 * 16));
+	}
+
+	@Test
+	public void roundTripsThroughAFile() throws IOException {
+		File file = File.createTempFile("synthesketch", ".patch");
+		try {
+			double[] waveform = Waveforms.TRIANGLE.getSamples();
+			for (int i = 0; i < waveform.length; ++i) {
+				waveform[i] = (float) waveform[i];
+			}
+			Envelope envelope = new Envelope(0.01, 0.1, 0.5, 0.2);
+			Patch.save(file, waveform, envelope);
+			Patch patch = Patch.load(file);
+			assertArrayEquals(waveform, patch.getWaveform(), 0);
+			assertEquals(0.5, patch.getEnvelope().sustain, 1e-6);
+		} finally {
+			file.delete();
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package synthesketch;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class VoiceAllocatorTest {
+
+	static final int VOICES = 4;
+
+	VoiceAllocator voices;
+
+	@Before
+	public void createAllocator() {
+		voices = new VoiceAllocator(VOICES);
+		voices.metrics = new Metrics(new WaveformSynthesizer());
+	}
+
+	void fill(VoiceStealingPolicy policy) {
+		voices.policy = policy;
+		for (int note = 0; note < VOICES; ++note) {
+			int voice = voices.allocate(60 + note);
+			assertEquals(note, voice);
+			voices.start(voice);
+			voices.setLevel(voice, 1);
+		}
+		assertEquals(0, voices.metrics.stolenNotes.get());
+	}
+
+	int steal(int note) {
+		int voice = voices.allocate(note);
+		if (voice >= 0) {
+			voices.start(voice);
+		}
+		return voice;
+	}
+
+	@Test
+	public void noneDropsNotesWhenFull() {
+		fill(VoiceStealingPolicy.NONE);
+		assertEquals(-1, steal(70));
+		assertEquals(0, voices.metrics.stolenNotes.get());
+		voices.release(61);
+		voices.free(1);
+		assertEquals(1, steal(70));
+	}
+
+	@Test
+	public void oldestStealsTheFirstNoteStarted() {
+		fill(VoiceStealingPolicy.OLDEST);
+		int generation = voices.generation(0);
+		assertEquals(0, steal(70));
+		assertEquals(70, voices.note(0));
+		assertEquals(generation + 1, voices.generation(0));
+		assertEquals(1, steal(71));
+		assertEquals(2, voices.metrics.stolenNotes.get());
+	}
+
+	@Test
+	public void quietestStealsTheLowestLevel() {
+		fill(VoiceStealingPolicy.QUIETEST);
+		voices.setLevel(2, 0.25f);
+		voices.setLevel(3, 0.5f);
+		assertEquals(2, steal(70));
+		voices.setLevel(2, 1);
+		assertEquals(3, steal(71));
+		assertEquals(2, voices.metrics.stolenNotes.get());
+	}
+
+	@Test
+	public void quietestBreaksTiesByAge() {
+		fill(VoiceStealingPolicy.QUIETEST);
+		voices.setLevel(1, 0.5f);
+		voices.setLevel(3, 0.5f);
+		assertEquals(1, steal(70));
+		assertEquals(1, voices.metrics.stolenNotes.get());
+	}
+
+	@Test
+	public void sameNoteReusesItsVoice() {
+		fill(VoiceStealingPolicy.SAME_NOTE);
+		assertEquals(2, steal(62));
+		assertEquals(0, voices.metrics.stolenNotes.get());
+		voices.release(63);
+		assertEquals(3, steal(63));
+		assertEquals(VoiceAllocator.ACTIVE, voices.state(3));
+		assertEquals(0, steal(70));
+		assertEquals(1, voices.metrics.stolenNotes.get());
+	}
+
+	@Test
+	public void releasingVoicesAreBetterVictims() {
+		for (VoiceStealingPolicy policy : new VoiceStealingPolicy[] {
+				VoiceStealingPolicy.OLDEST, VoiceStealingPolicy.QUIETEST,
+				VoiceStealingPolicy.SAME_NOTE }) {
+			createAllocator();
+			fill(policy);
+			voices.setLevel(0, 0.25f);
+			voices.release(62);
+			assertEquals(VoiceAllocator.RELEASING, voices.state(2));
+			assertEquals(policy.toString(), 2, steal(70));
+			assertEquals(1, voices.metrics.stolenNotes.get());
+		}
+	}
+
+}
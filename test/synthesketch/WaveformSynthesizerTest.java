@@ -0,0 +1,97 @@
+package synthesketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WaveformSynthesizerTest {
+
+	static final AudioFormat FORMAT = new AudioFormat(44100, 16, 1, true,
+			false);
+
+	WaveformSynthesizer synth;
+	WaveformSynthesizer.Renderer renderer;
+
+	@Before
+	public void createSynthesizer() {
+		synth = new WaveformSynthesizer();
+		synth.format = FORMAT;
+		synth.numberOfOscillators = WaveformSynthesizer.DEFAULT_OSCILLATORS;
+		synth.createVoices();
+		synth.wavetable = Waveforms.SINE.getWavetable();
+		renderer = synth.new Renderer(null, FORMAT);
+		synth.renderer = renderer;
+	}
+
+	@After
+	public void closeSynthesizer() {
+		renderer.close();
+		synth.close();
+	}
+
+	static long nanos(int frames) {
+		return (long) Math.ceil(frames * 1e9 / FORMAT.getFrameRate());
+	}
+
+	@Test
+	public void clampsFutureTimestamps() {
+		long now = System.nanoTime();
+		synth.noteOn(60, 100, now + 10000000000L);
+		assertTrue(synth.events.peekTime() <= System.nanoTime()
+				+ renderer.blockNanos);
+	}
+
+	@Test
+	public void countsDroppedEvents() {
+		long now = System.nanoTime();
+		for (int i = 0; i < WaveformSynthesizer.EVENT_QUEUE_CAPACITY; ++i) {
+			synth.noteOn(60, 100, now);
+		}
+		int reserved = WaveformSynthesizer.EVENT_QUEUE_CAPACITY
+				/ MidiEventQueue.RESERVED_FRACTION;
+		assertEquals(reserved, synth.getMetrics().getDroppedEvents());
+		synth.noteOff(60, now);
+		assertEquals(reserved, synth.getMetrics().getDroppedEvents());
+	}
+
+	@Test
+	public void startsEventsAtTheirFrameInTheBlock() {
+		int offset = 100, frames = WaveformSynthesizer.BLOCK_IN_FRAMES;
+		long blockTime = 1000000000L;
+		synth.noteOn(69, 127, blockTime + nanos(offset));
+		float[] mix = new float[frames];
+		renderer.eventTime = Long.MIN_VALUE;
+		renderer.render(mix, frames, synth.events, blockTime, blockTime
+				+ nanos(frames));
+		assertEquals(offset, renderer.eventOffset);
+		for (int i = 0; i < offset; ++i) {
+			assertEquals(0, mix[i], 0);
+		}
+		float peak = 0;
+		for (int i = offset; i < frames; ++i) {
+			peak = Math.max(peak, Math.abs(mix[i]));
+		}
+		assertTrue(peak > 0);
+		assertTrue(synth.events.isEmpty());
+	}
+
+	@Test
+	public void holdsEventsForLaterBlocks() {
+		int frames = WaveformSynthesizer.BLOCK_IN_FRAMES;
+		long blockTime = System.nanoTime();
+		synth.noteOn(69, 127, blockTime + nanos(frames + 10));
+		float[] mix = new float[frames];
+		renderer.render(mix, frames, synth.events, blockTime, blockTime
+				+ nanos(frames));
+		assertEquals(1, synth.events.tail.get() - synth.events.head.get());
+		for (int i = 0; i < frames; ++i) {
+			assertEquals(0, mix[i], 0);
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package synthesketch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class WavetableEditorTest {
+
+	static final int EDITS = 50;
+	static final int SKETCH_LENGTH = 200;
+	static final double TOLERANCE = 1e-5;
+
+	@Test
+	public void editsMatchRebuildAtSketchResolution() {
+		for (Interpolator interpolator : Interpolator.values()) {
+			checkRandomEdits(interpolator, SKETCH_LENGTH, 4);
+		}
+	}
+
+	@Test
+	public void wideEditsMatchRebuildAtSketchResolution() {
+		for (Interpolator interpolator : Interpolator.values()) {
+			checkRandomEdits(interpolator, SKETCH_LENGTH, 40);
+		}
+	}
+
+	@Test
+	public void editsMatchRebuildWhenUpsampling() {
+		for (Interpolator interpolator : Interpolator.values()) {
+			checkRandomEdits(interpolator, 1024, 4);
+		}
+	}
+
+	@Test
+	public void editsMatchRebuildWhenDownsampling() {
+		for (Interpolator interpolator : Interpolator.values()) {
+			checkRandomEdits(interpolator, 3000, 4);
+		}
+	}
+
+	@Test
+	public void singleSampleEditsStayNarrow() {
+		double[] waveform = new double[SKETCH_LENGTH];
+		double scale = (double) Wavetable.LENGTH / SKETCH_LENGTH;
+		checkRange(Interpolator.NEAREST, waveform, 2 * scale + 3);
+		checkRange(Interpolator.LINEAR, waveform, 2 * scale + 3);
+		checkRange(Interpolator.CUBIC, waveform, 4 * scale + 3);
+	}
+
+	static void checkRange(Interpolator interpolator, double[] waveform,
+			double points) {
+		int[] range = Wavetable.Editor.create(waveform, interpolator).range(
+				100, 100);
+		assertTrue(interpolator + " recomputes " + (range[1] - range[0] + 1)
+				+ " points", range[1] - range[0] + 1 <= points);
+	}
+
+	static void checkRandomEdits(Interpolator interpolator, int length,
+			int width) {
+		Random random = new Random(length);
+		double[] waveform = new double[length];
+		for (int i = 0; i < length; ++i) {
+			waveform[i] = Math.sin(2 * Math.PI * i / length);
+		}
+		Wavetable.Editor editor = Wavetable.Editor.create(waveform,
+				interpolator);
+		for (int edit = 0; edit < EDITS; ++edit) {
+			int from = random.nextInt(length);
+			int to = Math.min(length - 1, from + random.nextInt(width));
+			for (int i = from; i <= to; ++i) {
+				waveform[i] = 2 * random.nextDouble() - 1;
+			}
+			editor.edit(waveform, from, to);
+		}
+		double[][] rebuilt = Wavetable.bandLimit(interpolator.resample(
+				waveform, Wavetable.LENGTH, Wavetable.LENGTH));
+		float[] table = new float[Wavetable.LENGTH];
+		for (int level = 0; level < Wavetable.LEVELS; ++level) {
+			editor.wavetable.get(level, table);
+			for (int i = 0; i < Wavetable.LENGTH; ++i) {
+				assertEquals(interpolator + " level " + level + " sample "
+						+ i, rebuilt[level][i], table[i], TOLERANCE);
+			}
+		}
+	}
+
+}